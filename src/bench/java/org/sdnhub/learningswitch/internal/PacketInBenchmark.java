@@ -0,0 +1,82 @@
+package org.sdnhub.learningswitch.internal;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.opendaylight.controller.sal.packet.PacketResult;
+import org.opendaylight.controller.sal.packet.RawPacket;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Packets per second through LearningSwitch.receiveDataPacket.
+ *
+ * Run with {@code mvn -Pbenchmark test-compile exec:exec}; add
+ * {@code -Dbench.args="-prof gc"} for allocation rate per packet.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PacketInBenchmark {
+    private static final int PACKETS = 1 << 14;
+
+    @Param({ "hub", "switch" })
+    public String mode;
+
+    @Param({ "64", "4096" })
+    public int hosts;
+
+    @Param({ "8", "48" })
+    public int ports;
+
+    @Param({ "1", "16" })
+    public int switches;
+
+    private LearningSwitch learningSwitch;
+    private RawPacket[] packets;
+    private int next;
+
+    @Setup
+    public void setUp() throws Exception {
+        SalStubs stubs = new SalStubs(switches, ports);
+        learningSwitch = stubs.createLearningSwitch(mode.equals("switch"));
+
+        // Every host speaks once so destinations are known in switch mode
+        for (int h = 0; h < hosts; h++) {
+            learningSwitch.receiveDataPacket(stubs.broadcast(h));
+        }
+
+        Random random = new Random(42);
+        packets = new RawPacket[PACKETS];
+        for (int i = 0; i < PACKETS; i++) {
+            int src = random.nextInt(hosts);
+            int dst = random.nextInt(hosts);
+            packets[i] = stubs.packet(src, dst);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        learningSwitch.stop();
+    }
+
+    @Benchmark
+    public PacketResult receiveDataPacket() {
+        RawPacket packet = packets[next];
+        next = (next + 1) & (PACKETS - 1);
+        return learningSwitch.receiveDataPacket(packet);
+    }
+}
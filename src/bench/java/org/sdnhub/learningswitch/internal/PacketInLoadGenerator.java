@@ -0,0 +1,220 @@
+package org.sdnhub.learningswitch.internal;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opendaylight.controller.sal.core.ConstructionException;
+import org.opendaylight.controller.sal.packet.RawPacket;
+import org.sdnhub.learningswitch.StatisticsCounter;
+
+/**
+ * cbench-style load generator: drives LearningSwitch with synthetic
+ * packet-ins from an emulated network and reports what came back.
+ *
+ * In throughput mode every thread sends packet-ins as fast as
+ * receiveDataPacket takes them, and each loop reports packet-ins, flow
+ * setups and floods per second. In latency mode a single packet-in is
+ * outstanding at a time; the next one is sent once the controller has
+ * answered the previous one with a flow-mod or a packet-out, and the loop
+ * reports percentiles of that round trip.
+ *
+ * Run with
+ * {@code mvn -Pbenchmark test-compile exec:exec -Dbench.main=org.sdnhub.learningswitch.internal.PacketInLoadGenerator -Dbench.args="mode=latency switches=16"};
+ * options are key=value pairs, see {@link #main}.
+ */
+public class PacketInLoadGenerator {
+    private static final int PACKETS = 1 << 16;
+    private static final long RESPONSE_TIMEOUT_NANOS = 1000000000L;
+
+    private final SalStubs stubs;
+    private final LearningSwitch learningSwitch;
+    private final RawPacket[] packets;
+
+    public PacketInLoadGenerator(int switches, int ports, int hosts, boolean switchMode, long seed)
+            throws ConstructionException {
+        stubs = new SalStubs(switches, ports);
+        learningSwitch = stubs.createLearningSwitch(switchMode);
+
+        // Every host speaks once so destinations are known in switch mode
+        for (int h = 0; h < hosts; h++) {
+            learningSwitch.receiveDataPacket(stubs.broadcast(h));
+        }
+
+        Random random = new Random(seed);
+        packets = new RawPacket[PACKETS];
+        for (int i = 0; i < PACKETS; i++) {
+            int src = random.nextInt(hosts);
+            int dst = random.nextInt(hosts);
+            while (hosts > 1 && dst == src) {
+                dst = random.nextInt(hosts);
+            }
+            packets[i] = stubs.packet(src, dst);
+        }
+    }
+
+    /**
+     * Options, with their defaults: mode=throughput (or latency),
+     * function=switch (or hub), switches=16, ports=48, hosts=4096,
+     * threads=1 (throughput mode only), loops=10, duration=1000 (ms per
+     * loop), warmup=1 (loops not reported), seed=42.
+     */
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<String, String>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq <= 0) {
+                throw new IllegalArgumentException("Expected key=value, got " + arg);
+            }
+            options.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        String mode = option(options, "mode", "throughput");
+        int switches = Integer.parseInt(option(options, "switches", "16"));
+        int ports = Integer.parseInt(option(options, "ports", "48"));
+        int hosts = Integer.parseInt(option(options, "hosts", "4096"));
+        int threads = Integer.parseInt(option(options, "threads", "1"));
+        int loops = Integer.parseInt(option(options, "loops", "10"));
+        long duration = Long.parseLong(option(options, "duration", "1000"));
+        int warmup = Integer.parseInt(option(options, "warmup", "1"));
+        boolean switchMode = option(options, "function", "switch").equals("switch");
+        long seed = Long.parseLong(option(options, "seed", "42"));
+
+        System.out.printf("%s mode, %s, %d switches x %d ports, %d hosts%n", mode,
+                switchMode ? "switch" : "hub", switches, ports, hosts);
+        PacketInLoadGenerator generator =
+                new PacketInLoadGenerator(switches, ports, hosts, switchMode, seed);
+        try {
+            for (int loop = -warmup; loop < loops; loop++) {
+                String result = mode.equals("latency") ? generator.latencyLoop(duration)
+                        : generator.throughputLoop(threads, duration);
+                if (loop >= 0) {
+                    System.out.printf("loop %2d: %s%n", loop + 1, result);
+                }
+            }
+        } finally {
+            generator.stop();
+        }
+    }
+
+    private static String option(Map<String, String> options, String key, String defaultValue) {
+        String value = options.get(key);
+        return (value == null) ? defaultValue : value;
+    }
+
+    public void stop() {
+        learningSwitch.stop();
+    }
+
+    /**
+     * Sends packet-ins from all threads for duration milliseconds.
+     */
+    public String throughputLoop(int threads, final long duration) throws InterruptedException {
+        final AtomicLong sent = new AtomicLong();
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            final int offset = t * (PACKETS / threads);
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        long deadline = System.nanoTime() + duration * 1000000L;
+                        long count = 0;
+                        int next = offset;
+                        while ((count & 0xff) != 0 || System.nanoTime() < deadline) {
+                            learningSwitch.receiveDataPacket(packets[next]);
+                            next = (next + 1) & (PACKETS - 1);
+                            count++;
+                        }
+                        sent.addAndGet(count);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }, "learningswitch-load-" + t);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        long flowsBefore = stubs.flowsAdded.get();
+        long floodsBefore = floods();
+        long startTime = System.nanoTime();
+        start.countDown();
+        done.await();
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+        return String.format("%.0f packet-ins/s, %.0f flow setups/s, %.0f floods/s",
+                sent.get() / seconds, (stubs.flowsAdded.get() - flowsBefore) / seconds,
+                (floods() - floodsBefore) / seconds);
+    }
+
+    /**
+     * Sends one packet-in at a time for duration milliseconds, timing each
+     * until the first flow-mod or packet-out it causes.
+     */
+    public String latencyLoop(long duration) {
+        long[] samples = new long[1024];
+        int count = 0;
+        int lost = 0;
+        int next = 0;
+        long deadline = System.nanoTime() + duration * 1000000L;
+        while (System.nanoTime() < deadline) {
+            long before = responses();
+            long sentAt = System.nanoTime();
+            learningSwitch.receiveDataPacket(packets[next]);
+            next = (next + 1) & (PACKETS - 1);
+            long now;
+            while (responses() == before) {
+                now = System.nanoTime();
+                if (now - sentAt > RESPONSE_TIMEOUT_NANOS) {
+                    break;
+                }
+                Thread.yield();
+            }
+            now = System.nanoTime();
+            if (responses() == before) {
+                lost++;
+                continue;
+            }
+            if (count == samples.length) {
+                samples = Arrays.copyOf(samples, count * 2);
+            }
+            samples[count++] = now - sentAt;
+        }
+        Arrays.sort(samples, 0, count);
+        double seconds = duration / 1e3;
+        return String.format(
+                "%.0f responses/s, p50 %s, p90 %s, p99 %s, p99.9 %s, max %s, %d unanswered",
+                count / seconds, micros(samples, count, 0.50), micros(samples, count, 0.90),
+                micros(samples, count, 0.99), micros(samples, count, 0.999),
+                micros(samples, count, 1.0), lost);
+    }
+
+    private long responses() {
+        return stubs.flowsAdded.get() + stubs.transmitted.get();
+    }
+
+    private long floods() {
+        long floods = 0;
+        for (StatisticsCounter counter : learningSwitch.getStatistics().getCounters()) {
+            if (counter.getName().equals("hubFloods")
+                    || counter.getName().equals("unknownUnicastFloods")) {
+                floods += counter.getValue();
+            }
+        }
+        return floods;
+    }
+
+    private static String micros(long[] sorted, int count, double quantile) {
+        if (count == 0) {
+            return "-";
+        }
+        int index = (int) Math.min(count - 1, Math.max(0, Math.ceil(count * quantile) - 1));
+        return String.format("%.1fus", sorted[index] / 1e3);
+    }
+}
@@ -0,0 +1,225 @@
+package org.sdnhub.learningswitch.internal;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opendaylight.controller.sal.core.ConstructionException;
+import org.opendaylight.controller.sal.core.Node;
+import org.opendaylight.controller.sal.core.NodeConnector;
+import org.opendaylight.controller.sal.flowprogrammer.IFlowProgrammerService;
+import org.opendaylight.controller.sal.packet.IDataPacketService;
+import org.opendaylight.controller.sal.packet.Packet;
+import org.opendaylight.controller.sal.packet.RawPacket;
+import org.opendaylight.controller.sal.utils.NodeConnectorCreator;
+import org.opendaylight.controller.sal.utils.NodeCreator;
+import org.opendaylight.controller.sal.utils.Status;
+import org.opendaylight.controller.sal.utils.StatusCode;
+import org.opendaylight.controller.switchmanager.ISwitchManager;
+
+/**
+ * In-memory stand-ins for the SAL services LearningSwitch depends on, plus
+ * an emulated network of switches, ports and hosts to drive it with.
+ *
+ * Host h is attached to switch (h % switches) on port (h / switches) % ports
+ * + 1. The switch manager and flow programmer are dynamic proxies because
+ * only a handful of their methods are ever called; the data packet service
+ * is on the per-packet path and is implemented directly.
+ */
+public class SalStubs {
+    private final List<Node> nodes = new ArrayList<Node>();
+    private final Map<Node, Set<NodeConnector>> ports = new HashMap<Node, Set<NodeConnector>>();
+    private final int portsPerSwitch;
+
+    final AtomicLong transmitted = new AtomicLong();
+    final AtomicLong flowsAdded = new AtomicLong();
+    final AtomicLong flowsRemoved = new AtomicLong();
+
+    public SalStubs(int switches, int portsPerSwitch) throws ConstructionException {
+        this.portsPerSwitch = portsPerSwitch;
+        for (int s = 0; s < switches; s++) {
+            Node node = NodeCreator.createOFNode((long) (s + 1));
+            Set<NodeConnector> nodePorts = new LinkedHashSet<NodeConnector>();
+            for (int p = 1; p <= portsPerSwitch; p++) {
+                nodePorts.add(NodeConnectorCreator.createOFNodeConnector((short) p, node));
+            }
+            nodes.add(node);
+            ports.put(node, nodePorts);
+        }
+    }
+
+    public List<Node> getNodes() {
+        return nodes;
+    }
+
+    public NodeConnector portOf(int host) {
+        Node node = nodes.get(host % nodes.size());
+        int index = (host / nodes.size()) % portsPerSwitch;
+        for (NodeConnector port : ports.get(node)) {
+            if (index-- == 0) {
+                return port;
+            }
+        }
+        throw new IllegalStateException();
+    }
+
+    public static long macOf(int host) {
+        return 0x020000000000L | (host + 1);
+    }
+
+    /**
+     * Builds a minimal IPv4 frame from one host to another, arriving on the
+     * source host's port.
+     */
+    public RawPacket packet(int srcHost, int dstHost) throws ConstructionException {
+        byte[] frame = new byte[64];
+        writeMac(frame, 0, macOf(dstHost));
+        writeMac(frame, 6, macOf(srcHost));
+        frame[12] = 0x08;
+        frame[13] = 0x00;
+        RawPacket packet = new RawPacket(frame);
+        packet.setIncomingNodeConnector(portOf(srcHost));
+        return packet;
+    }
+
+    /**
+     * Same as {@link #packet} but to the broadcast address.
+     */
+    public RawPacket broadcast(int srcHost) throws ConstructionException {
+        RawPacket packet = packet(srcHost, 0);
+        byte[] frame = packet.getPacketData();
+        for (int i = 0; i < 6; i++) {
+            frame[i] = (byte) 0xff;
+        }
+        return packet;
+    }
+
+    private static void writeMac(byte[] frame, int offset, long mac) {
+        byte[] bytes = EthernetHeader.toBytes(mac);
+        System.arraycopy(bytes, 0, frame, offset, bytes.length);
+    }
+
+    /**
+     * Creates a LearningSwitch wired to these stubs and started.
+     */
+    public LearningSwitch createLearningSwitch(boolean switchMode) {
+        // Benchmarks start cold and must not leave a snapshot behind
+        System.setProperty("learningswitch.snapshot.file", "");
+        LearningSwitch learningSwitch = new LearningSwitch();
+        learningSwitch.setDataPacketService(dataPacketService());
+        learningSwitch.setSwitchManager(switchManager());
+        learningSwitch.setFlowProgrammerService(flowProgrammer());
+        learningSwitch.init();
+        learningSwitch.start();
+        if (switchMode) {
+            learningSwitch.toggleSwitchHub();
+        }
+        return learningSwitch;
+    }
+
+    public IDataPacketService dataPacketService() {
+        return new IDataPacketService() {
+            @Override
+            public void transmitDataPacket(RawPacket outPkt) {
+                transmitted.incrementAndGet();
+            }
+
+            @Override
+            public Packet decodeDataPacket(RawPacket pkt) {
+                return null;
+            }
+
+            @Override
+            public RawPacket encodeDataPacket(Packet pkt) {
+                return null;
+            }
+        };
+    }
+
+    public ISwitchManager switchManager() {
+        return proxy(ISwitchManager.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                String name = method.getName();
+                if (name.equals("getUpNodeConnectors") || name.equals("getNodeConnectors")) {
+                    Set<NodeConnector> nodePorts = ports.get(args[0]);
+                    return (nodePorts == null) ? new LinkedHashSet<NodeConnector>()
+                            : new LinkedHashSet<NodeConnector>(nodePorts);
+                }
+                if (name.equals("getNodes")) {
+                    return new ArrayList<Node>(nodes);
+                }
+                return defaultValue(proxy, method, args);
+            }
+        });
+    }
+
+    public IFlowProgrammerService flowProgrammer() {
+        return proxy(IFlowProgrammerService.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                String name = method.getName();
+                if (name.startsWith("addFlow")) {
+                    flowsAdded.incrementAndGet();
+                } else if (name.startsWith("removeFlow")) {
+                    flowsRemoved.incrementAndGet();
+                }
+                return defaultValue(proxy, method, args);
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(SalStubs.class.getClassLoader(),
+                new Class<?>[] { type }, handler);
+    }
+
+    private static Object defaultValue(Object proxy, Method method, Object[] args) {
+        Class<?> type = method.getReturnType();
+        if (method.getName().equals("equals")) {
+            return proxy == args[0];
+        }
+        if (method.getName().equals("hashCode")) {
+            return System.identityHashCode(proxy);
+        }
+        if (method.getName().equals("toString")) {
+            return "SalStub";
+        }
+        if (type == Status.class) {
+            return new Status(StatusCode.SUCCESS);
+        }
+        if (type == boolean.class || type == Boolean.class) {
+            return Boolean.FALSE;
+        }
+        if (type.isPrimitive() && type != void.class) {
+            if (type == long.class) {
+                return 0L;
+            }
+            if (type == short.class) {
+                return (short) 0;
+            }
+            if (type == byte.class) {
+                return (byte) 0;
+            }
+            if (type == char.class) {
+                return (char) 0;
+            }
+            if (type == float.class) {
+                return 0f;
+            }
+            if (type == double.class) {
+                return 0d;
+            }
+            return 0;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,26 @@
+
+package org.sdnhub.learningswitch;
+import java.util.List;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+@XmlRootElement
+@XmlAccessorType(XmlAccessType.NONE)
+public class AuthorizedHosts {
+    @XmlElement
+    private List<String> hosts;
+
+    public List<String> getHosts() {
+        return hosts;
+    }
+    public AuthorizedHosts() {
+        super();
+    }
+    public AuthorizedHosts(List<String> hosts) {
+        super();
+        this.hosts = hosts;
+    }
+}
@@ -0,0 +1,42 @@
+
+package org.sdnhub.learningswitch;
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+@XmlRootElement
+@XmlAccessorType(XmlAccessType.NONE)
+public class BatchItemStatus {
+    @XmlElement
+    private String operation;
+    @XmlElement
+    private String uuid;
+    @XmlElement
+    private String status;
+    @XmlElement
+    private String description;
+
+    public String getOperation() {
+        return operation;
+    }
+    public String getUuid() {
+        return uuid;
+    }
+    public String getStatus() {
+        return status;
+    }
+    public String getDescription() {
+        return description;
+    }
+    public BatchItemStatus() {
+        super();
+    }
+    public BatchItemStatus(String operation, String uuid, String status, String description) {
+        super();
+        this.operation = operation;
+        this.uuid = uuid;
+        this.status = status;
+        this.description = description;
+    }
+}
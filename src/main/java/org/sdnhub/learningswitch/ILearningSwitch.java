@@ -1,6 +1,7 @@
 
 package org.sdnhub.learningswitch;
 
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
@@ -10,9 +11,25 @@ public interface ILearningSwitch {
     public UUID createData(LearningSwitchData datum);
     public LearningSwitchData readData(UUID uuid);
     public Map<UUID, LearningSwitchData> readData();
+    public Map<UUID, LearningSwitchData> readDataAfter(UUID cursor);
+    public long getDataVersion();
     public Status updateData(UUID uuid, LearningSwitchData data);
     public Status deleteData(UUID uuid);
+    public List<UUID> createData(List<LearningSwitchData> datums);
+    public List<Status> updateData(Map<UUID, LearningSwitchData> datums);
+    public List<Status> deleteData(List<UUID> uuids);
 	public String toggleSwitchHub();
+	public LearningSwitchEvents getEvents(long cursor, long timeoutMillis, int maxEvents);
 	public String echo(String echo);
+	public MacTableStatistics getMacTableStatistics();
+	public MacTablePage getMacTableEntries(long snapshot, String node, String nodeConnector,
+			int cursor, int limit);
+	public List<MacTableEntry> lookupMac(String mac);
+	public List<PortDropStatistics> getFloodDropStatistics();
+	public LearningSwitchStatistics getStatistics();
+	public PacketTraces getPacketTraces(int max);
+	public Status authorizeHost(String mac);
+	public Status revokeHost(String mac);
+	public List<String> getAuthorizedHosts();
 	
 }	
@@ -0,0 +1,63 @@
+
+package org.sdnhub.learningswitch;
+import java.util.List;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+@XmlRootElement
+@XmlAccessorType(XmlAccessType.NONE)
+public class LatencyStatistics {
+    @XmlElement
+    private String name;
+    @XmlElement
+    private long count;
+    @XmlElement
+    private long meanNanos;
+    @XmlElement
+    private long p50Nanos;
+    @XmlElement
+    private long p99Nanos;
+    @XmlElement
+    private List<Long> bucketUpperBoundNanos;
+    @XmlElement
+    private List<Long> bucketCounts;
+
+    public String getName() {
+        return name;
+    }
+    public long getCount() {
+        return count;
+    }
+    public long getMeanNanos() {
+        return meanNanos;
+    }
+    public long getP50Nanos() {
+        return p50Nanos;
+    }
+    public long getP99Nanos() {
+        return p99Nanos;
+    }
+    public List<Long> getBucketUpperBoundNanos() {
+        return bucketUpperBoundNanos;
+    }
+    public List<Long> getBucketCounts() {
+        return bucketCounts;
+    }
+    public LatencyStatistics() {
+        super();
+    }
+    public LatencyStatistics(String name, long count, long meanNanos, long p50Nanos, long p99Nanos,
+            List<Long> bucketUpperBoundNanos, List<Long> bucketCounts) {
+        super();
+        this.name = name;
+        this.count = count;
+        this.meanNanos = meanNanos;
+        this.p50Nanos = p50Nanos;
+        this.p99Nanos = p99Nanos;
+        this.bucketUpperBoundNanos = bucketUpperBoundNanos;
+        this.bucketCounts = bucketCounts;
+    }
+}
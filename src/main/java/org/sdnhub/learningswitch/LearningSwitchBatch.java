@@ -0,0 +1,39 @@
+
+package org.sdnhub.learningswitch;
+import java.util.List;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+@XmlRootElement
+@XmlAccessorType(XmlAccessType.NONE)
+public class LearningSwitchBatch {
+    @XmlElement
+    private List<LearningSwitchData> create;
+    @XmlElement
+    private List<LearningSwitchData> update;
+    @XmlElement
+    private List<String> delete;
+
+    public List<LearningSwitchData> getCreate() {
+        return create;
+    }
+    public List<LearningSwitchData> getUpdate() {
+        return update;
+    }
+    public List<String> getDelete() {
+        return delete;
+    }
+    public LearningSwitchBatch() {
+        super();
+    }
+    public LearningSwitchBatch(List<LearningSwitchData> create, List<LearningSwitchData> update,
+            List<String> delete) {
+        super();
+        this.create = create;
+        this.update = update;
+        this.delete = delete;
+    }
+}
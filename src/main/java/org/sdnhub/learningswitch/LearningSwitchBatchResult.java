@@ -0,0 +1,26 @@
+
+package org.sdnhub.learningswitch;
+import java.util.List;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+@XmlRootElement
+@XmlAccessorType(XmlAccessType.NONE)
+public class LearningSwitchBatchResult {
+    @XmlElement
+    private List<BatchItemStatus> results;
+
+    public List<BatchItemStatus> getResults() {
+        return results;
+    }
+    public LearningSwitchBatchResult() {
+        super();
+    }
+    public LearningSwitchBatchResult(List<BatchItemStatus> results) {
+        super();
+        this.results = results;
+    }
+}
@@ -0,0 +1,61 @@
+
+package org.sdnhub.learningswitch;
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+@XmlRootElement
+@XmlAccessorType(XmlAccessType.NONE)
+public class LearningSwitchEvent {
+    @XmlElement
+    private String type;
+    @XmlElement
+    private long time;
+    @XmlElement
+    private String mac;
+    @XmlElement
+    private String node;
+    @XmlElement
+    private String nodeConnector;
+    @XmlElement
+    private String previousNodeConnector;
+    @XmlElement
+    private String mode;
+
+    public String getType() {
+        return type;
+    }
+    public long getTime() {
+        return time;
+    }
+    public String getMac() {
+        return mac;
+    }
+    public String getNode() {
+        return node;
+    }
+    public String getNodeConnector() {
+        return nodeConnector;
+    }
+    public String getPreviousNodeConnector() {
+        return previousNodeConnector;
+    }
+    public String getMode() {
+        return mode;
+    }
+    public LearningSwitchEvent() {
+        super();
+    }
+    public LearningSwitchEvent(String type, long time, String mac, String node, String nodeConnector,
+            String previousNodeConnector, String mode) {
+        super();
+        this.type = type;
+        this.time = time;
+        this.mac = mac;
+        this.node = node;
+        this.nodeConnector = nodeConnector;
+        this.previousNodeConnector = previousNodeConnector;
+        this.mode = mode;
+    }
+}
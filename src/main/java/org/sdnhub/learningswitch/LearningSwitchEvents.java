@@ -0,0 +1,38 @@
+
+package org.sdnhub.learningswitch;
+import java.util.List;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+@XmlRootElement
+@XmlAccessorType(XmlAccessType.NONE)
+public class LearningSwitchEvents {
+    @XmlElement
+    private List<LearningSwitchEvent> events;
+    @XmlElement
+    private long next;
+    @XmlElement
+    private long missed;
+
+    public List<LearningSwitchEvent> getEvents() {
+        return events;
+    }
+    public long getNext() {
+        return next;
+    }
+    public long getMissed() {
+        return missed;
+    }
+    public LearningSwitchEvents() {
+        super();
+    }
+    public LearningSwitchEvents(List<LearningSwitchEvent> events, long next, long missed) {
+        super();
+        this.events = events;
+        this.next = next;
+        this.missed = missed;
+    }
+}
@@ -0,0 +1,32 @@
+
+package org.sdnhub.learningswitch;
+import java.util.List;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+@XmlRootElement
+@XmlAccessorType(XmlAccessType.NONE)
+public class LearningSwitchStatistics {
+    @XmlElement
+    private List<StatisticsCounter> counters;
+    @XmlElement
+    private List<LatencyStatistics> latencies;
+
+    public List<StatisticsCounter> getCounters() {
+        return counters;
+    }
+    public List<LatencyStatistics> getLatencies() {
+        return latencies;
+    }
+    public LearningSwitchStatistics() {
+        super();
+    }
+    public LearningSwitchStatistics(List<StatisticsCounter> counters, List<LatencyStatistics> latencies) {
+        super();
+        this.counters = counters;
+        this.latencies = latencies;
+    }
+}
@@ -0,0 +1,42 @@
+
+package org.sdnhub.learningswitch;
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+@XmlRootElement
+@XmlAccessorType(XmlAccessType.NONE)
+public class MacTableEntry {
+    @XmlElement
+    private String mac;
+    @XmlElement
+    private String node;
+    @XmlElement
+    private String nodeConnector;
+    @XmlElement
+    private long lastSeen;
+
+    public String getMac() {
+        return mac;
+    }
+    public String getNode() {
+        return node;
+    }
+    public String getNodeConnector() {
+        return nodeConnector;
+    }
+    public long getLastSeen() {
+        return lastSeen;
+    }
+    public MacTableEntry() {
+        super();
+    }
+    public MacTableEntry(String mac, String node, String nodeConnector, long lastSeen) {
+        super();
+        this.mac = mac;
+        this.node = node;
+        this.nodeConnector = nodeConnector;
+        this.lastSeen = lastSeen;
+    }
+}
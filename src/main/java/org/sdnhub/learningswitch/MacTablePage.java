@@ -0,0 +1,50 @@
+
+package org.sdnhub.learningswitch;
+import java.util.List;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+@XmlRootElement
+@XmlAccessorType(XmlAccessType.NONE)
+public class MacTablePage {
+    @XmlElement
+    private long snapshot;
+    @XmlElement
+    private long takenAt;
+    @XmlElement
+    private int total;
+    @XmlElement
+    private List<MacTableEntry> entries;
+    @XmlElement
+    private int next;
+
+    public long getSnapshot() {
+        return snapshot;
+    }
+    public long getTakenAt() {
+        return takenAt;
+    }
+    public int getTotal() {
+        return total;
+    }
+    public List<MacTableEntry> getEntries() {
+        return entries;
+    }
+    public int getNext() {
+        return next;
+    }
+    public MacTablePage() {
+        super();
+    }
+    public MacTablePage(long snapshot, long takenAt, int total, List<MacTableEntry> entries, int next) {
+        super();
+        this.snapshot = snapshot;
+        this.takenAt = takenAt;
+        this.total = total;
+        this.entries = entries;
+        this.next = next;
+    }
+}
@@ -0,0 +1,36 @@
+
+package org.sdnhub.learningswitch;
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+@XmlRootElement
+@XmlAccessorType(XmlAccessType.NONE)
+public class MacTableStatistics {
+    @XmlElement
+    private int entries;
+    @XmlElement
+    private long aged;
+    @XmlElement
+    private long evicted;
+
+    public int getEntries() {
+        return entries;
+    }
+    public long getAged() {
+        return aged;
+    }
+    public long getEvicted() {
+        return evicted;
+    }
+    public MacTableStatistics() {
+        super();
+    }
+    public MacTableStatistics(int entries, long aged, long evicted) {
+        super();
+        this.entries = entries;
+        this.aged = aged;
+        this.evicted = evicted;
+    }
+}
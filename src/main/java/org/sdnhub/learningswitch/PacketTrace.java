@@ -0,0 +1,63 @@
+
+package org.sdnhub.learningswitch;
+import java.util.List;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+@XmlRootElement
+@XmlAccessorType(XmlAccessType.NONE)
+public class PacketTrace {
+    @XmlElement
+    private long time;
+    @XmlElement
+    private String nodeConnector;
+    @XmlElement
+    private String src;
+    @XmlElement
+    private String dst;
+    @XmlElement
+    private String result;
+    @XmlElement
+    private long totalNanos;
+    @XmlElement
+    private List<PacketTraceStage> stages;
+
+    public long getTime() {
+        return time;
+    }
+    public String getNodeConnector() {
+        return nodeConnector;
+    }
+    public String getSrc() {
+        return src;
+    }
+    public String getDst() {
+        return dst;
+    }
+    public String getResult() {
+        return result;
+    }
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+    public List<PacketTraceStage> getStages() {
+        return stages;
+    }
+    public PacketTrace() {
+        super();
+    }
+    public PacketTrace(long time, String nodeConnector, String src, String dst, String result,
+            long totalNanos, List<PacketTraceStage> stages) {
+        super();
+        this.time = time;
+        this.nodeConnector = nodeConnector;
+        this.src = src;
+        this.dst = dst;
+        this.result = result;
+        this.totalNanos = totalNanos;
+        this.stages = stages;
+    }
+}
@@ -0,0 +1,30 @@
+
+package org.sdnhub.learningswitch;
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+@XmlRootElement
+@XmlAccessorType(XmlAccessType.NONE)
+public class PacketTraceStage {
+    @XmlElement
+    private String name;
+    @XmlElement
+    private long nanos;
+
+    public String getName() {
+        return name;
+    }
+    public long getNanos() {
+        return nanos;
+    }
+    public PacketTraceStage() {
+        super();
+    }
+    public PacketTraceStage(String name, long nanos) {
+        super();
+        this.name = name;
+        this.nanos = nanos;
+    }
+}
@@ -0,0 +1,51 @@
+
+package org.sdnhub.learningswitch;
+import java.util.List;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+@XmlRootElement
+@XmlAccessorType(XmlAccessType.NONE)
+public class PacketTraces {
+    @XmlElement
+    private int sampleRate;
+    @XmlElement
+    private long slowThresholdNanos;
+    @XmlElement
+    private long sampled;
+    @XmlElement
+    private long kept;
+    @XmlElement
+    private List<PacketTrace> traces;
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+    public long getSlowThresholdNanos() {
+        return slowThresholdNanos;
+    }
+    public long getSampled() {
+        return sampled;
+    }
+    public long getKept() {
+        return kept;
+    }
+    public List<PacketTrace> getTraces() {
+        return traces;
+    }
+    public PacketTraces() {
+        super();
+    }
+    public PacketTraces(int sampleRate, long slowThresholdNanos, long sampled, long kept,
+            List<PacketTrace> traces) {
+        super();
+        this.sampleRate = sampleRate;
+        this.slowThresholdNanos = slowThresholdNanos;
+        this.sampled = sampled;
+        this.kept = kept;
+        this.traces = traces;
+    }
+}
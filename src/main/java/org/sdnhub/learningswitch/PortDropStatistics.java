@@ -0,0 +1,36 @@
+
+package org.sdnhub.learningswitch;
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+@XmlRootElement
+@XmlAccessorType(XmlAccessType.NONE)
+public class PortDropStatistics {
+    @XmlElement
+    private String nodeConnector;
+    @XmlElement
+    private long dropped;
+    @XmlElement
+    private long sampled;
+
+    public String getNodeConnector() {
+        return nodeConnector;
+    }
+    public long getDropped() {
+        return dropped;
+    }
+    public long getSampled() {
+        return sampled;
+    }
+    public PortDropStatistics() {
+        super();
+    }
+    public PortDropStatistics(String nodeConnector, long dropped, long sampled) {
+        super();
+        this.nodeConnector = nodeConnector;
+        this.dropped = dropped;
+        this.sampled = sampled;
+    }
+}
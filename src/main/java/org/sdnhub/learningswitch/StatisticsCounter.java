@@ -0,0 +1,30 @@
+
+package org.sdnhub.learningswitch;
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+@XmlRootElement
+@XmlAccessorType(XmlAccessType.NONE)
+public class StatisticsCounter {
+    @XmlElement
+    private String name;
+    @XmlElement
+    private long value;
+
+    public String getName() {
+        return name;
+    }
+    public long getValue() {
+        return value;
+    }
+    public StatisticsCounter() {
+        super();
+    }
+    public StatisticsCounter(String name, long value) {
+        super();
+        this.name = name;
+        this.value = value;
+    }
+}
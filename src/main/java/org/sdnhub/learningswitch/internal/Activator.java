@@ -7,13 +7,19 @@ import java.util.Set;
 
 import org.apache.felix.dm.Component;
 import org.sdnhub.learningswitch.ILearningSwitch;
+import org.sdnhub.learningswitch.northbound.NorthboundCache;
 import org.opendaylight.controller.sal.core.ComponentActivatorAbstractBase;
+import org.opendaylight.controller.sal.flowprogrammer.IFlowProgrammerListener;
 import org.opendaylight.controller.sal.flowprogrammer.IFlowProgrammerService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.opendaylight.controller.sal.packet.IListenDataPacket;
 import org.opendaylight.controller.sal.packet.IDataPacketService;
+import org.opendaylight.controller.switchmanager.IInventoryListener;
 import org.opendaylight.controller.switchmanager.ISwitchManager;
+import org.opendaylight.controller.topologymanager.ITopologyManager;
+import org.opendaylight.controller.topologymanager.ITopologyManagerAware;
+import org.osgi.framework.BundleContext;
 
 
 
@@ -41,6 +47,22 @@ public class Activator extends ComponentActivatorAbstractBase {
     public void destroy() {
     }
 */
+    /**
+     * Lets the northbound cache service lookups for as long as the bundle
+     * is active.
+     */
+    @Override
+    public void start(BundleContext context) {
+        super.start(context);
+        NorthboundCache.open(context);
+    }
+
+    @Override
+    public void stop(BundleContext context) {
+        NorthboundCache.close();
+        super.stop(context);
+    }
+
     /**
      * Function that is used to communicate to dependency manager the list of
      * known implementations for services inside a container
@@ -98,7 +120,9 @@ public class Activator extends ComponentActivatorAbstractBase {
         	   // export the services
             Dictionary<String, String> props = new Hashtable<String, String>();
             props.put("salListenerName", "LearningSwitch");
-            c.setInterface(new String[] { IListenDataPacket.class.getName(), ILearningSwitch.class.getName() }, props);
+            c.setInterface(new String[] { IListenDataPacket.class.getName(), ILearningSwitch.class.getName(),
+                    IInventoryListener.class.getName(), ITopologyManagerAware.class.getName(),
+                    IFlowProgrammerListener.class.getName() }, props);
 
             // register dependent modules
             c.add(createContainerServiceDependency(containerName).setService(
@@ -115,6 +139,11 @@ public class Activator extends ComponentActivatorAbstractBase {
                     "setFlowProgrammerService", "unsetFlowProgrammerService")
                     .setRequired(true));
 
+            c.add(createContainerServiceDependency(containerName).setService(
+                    ITopologyManager.class).setCallbacks(
+                    "setTopologyManager", "unsetTopologyManager")
+                    .setRequired(false));
+
         }
     }
 }
@@ -0,0 +1,228 @@
+package org.sdnhub.learningswitch.internal;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.opendaylight.controller.sal.core.Node;
+import org.opendaylight.controller.sal.core.NodeConnector;
+import org.opendaylight.controller.sal.flowprogrammer.Flow;
+
+/**
+ * Picks the idle timeout of each reactive flow from how soon the same flow
+ * (same switch, ingress port, source and destination match) was wanted
+ * again after it last left the switch.
+ *
+ * A flow that is programmed again shortly after its predecessor idled out
+ * belongs to a chatty destination, so its timeout is doubled and the pair
+ * stops costing a packet-in every few seconds. A flow that had been gone
+ * for a long time gets its timeout halved, so one-off destinations don't
+ * hold table space as long as busy ones. Timeouts stay within [min, max],
+ * and while the switch's flow table is over its budget they only ever
+ * shrink.
+ *
+ * The gap is measured from the switch's flow-removed notification when one
+ * arrived, otherwise from the earliest moment the predecessor could have
+ * idled out. Only idle-outs count: a removal the controller asked for, or
+ * one reported before the flow could have idled out, says nothing about
+ * how busy the flow was and is ignored.
+ *
+ * Each flow's state is an immutable value swapped in with
+ * {@link ConcurrentMap#replace(Object, Object, Object)}, so concurrent
+ * packet-ins and removal notifications never lose each other's updates.
+ */
+public class AdaptiveIdleTimeout {
+    static final int DEFAULT_MIN = 5;
+    static final int DEFAULT_MAX = 60;
+
+    /**
+     * Flows tracked per switch before new ones just get the minimum.
+     */
+    private static final int MAX_TRACKED = 65536;
+
+    private final ConcurrentMap<Node, ConcurrentMap<FlowShadowTable.Key, State>> states =
+            new ConcurrentHashMap<Node, ConcurrentMap<FlowShadowTable.Key, State>>();
+    private final short min;
+    private final short max;
+
+    /**
+     * @param min
+     *            shortest timeout in seconds
+     * @param max
+     *            longest timeout in seconds, equal to min for a fixed timeout
+     */
+    public AdaptiveIdleTimeout(int min, int max) {
+        this.min = (short) Math.max(min, 1);
+        this.max = (short) Math.min(Math.max(max, this.min), Short.MAX_VALUE);
+    }
+
+    /**
+     * Chooses the timeout of a flow about to be programmed.
+     *
+     * @param inPort
+     *            ingress port the flow matches on, or null
+     * @param srcMac
+     *            source MAC the flow matches on, or -1
+     * @param crowded
+     *            true if the switch's flow table is over its budget
+     */
+    public short next(Node node, NodeConnector inPort, long srcMac, long dstMac, long now,
+            boolean crowded) {
+        if (min == max) {
+            return min;
+        }
+        ConcurrentMap<FlowShadowTable.Key, State> flows = states.get(node);
+        if (flows == null) {
+            ConcurrentMap<FlowShadowTable.Key, State> created =
+                    new ConcurrentHashMap<FlowShadowTable.Key, State>();
+            flows = states.putIfAbsent(node, created);
+            if (flows == null) {
+                flows = created;
+            }
+        }
+        FlowShadowTable.Key key = new FlowShadowTable.Key(node, inPort, srcMac, dstMac);
+        while (true) {
+            State state = flows.get(key);
+            if (state == null) {
+                if (flows.size() >= MAX_TRACKED) {
+                    return min;
+                }
+                if (flows.putIfAbsent(key, new State(min, now, 0L, false)) == null) {
+                    return min;
+                }
+                continue;
+            }
+            short timeout = adjust(state, now, crowded);
+            if (flows.replace(key, state, new State(timeout, now, state.removed, false))) {
+                return timeout;
+            }
+        }
+    }
+
+    private short adjust(State state, long now, boolean crowded) {
+        if (crowded) {
+            return (short) Math.max(state.timeout / 2, min);
+        }
+        if (state.invalidated) {
+            // Taken off by the controller, how long it was gone is no
+            // measure of demand
+            return state.timeout;
+        }
+        long lifetime = state.timeout * 1000L;
+        long gone = (state.removed >= state.programmed) ? state.removed
+                : state.programmed + lifetime;
+        // Time the flow was missing from the switch before this one
+        long gap = now - gone;
+        if (gap < lifetime) {
+            return (short) Math.min(state.timeout * 2, max);
+        }
+        if (gap > 4 * lifetime) {
+            return (short) Math.max(state.timeout / 2, min);
+        }
+        return state.timeout;
+    }
+
+    /**
+     * Notes that the switch reported the flow gone. Flows not chosen here,
+     * flows the controller removed itself and removals reported before the
+     * flow could have idled out are ignored.
+     */
+    public void removed(Node node, Flow flow, long now) {
+        ConcurrentMap<FlowShadowTable.Key, State> flows = states.get(node);
+        FlowShadowTable.Key key = FlowShadowTable.keyOf(node, flow);
+        if (flows == null || key == null) {
+            return;
+        }
+        while (true) {
+            State state = flows.get(key);
+            if (state == null || state.invalidated
+                    || now < state.programmed + state.timeout * 1000L) {
+                return;
+            }
+            if (flows.replace(key, state,
+                    new State(state.timeout, state.programmed, now, false))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Notes that the controller is taking the flow off the switch, so the
+     * removal the switch reports for it is not mistaken for an idle-out.
+     */
+    public void invalidated(Node node, Flow flow) {
+        ConcurrentMap<FlowShadowTable.Key, State> flows = states.get(node);
+        FlowShadowTable.Key key = FlowShadowTable.keyOf(node, flow);
+        if (flows == null || key == null) {
+            return;
+        }
+        while (true) {
+            State state = flows.get(key);
+            if (state == null || state.invalidated) {
+                return;
+            }
+            if (flows.replace(key, state,
+                    new State(state.timeout, state.programmed, state.removed, true))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Forgets flows that have not been programmed for several maximum
+     * timeouts.
+     */
+    public void expire(long now) {
+        long horizon = now - 4 * max * 1000L;
+        for (ConcurrentMap<FlowShadowTable.Key, State> flows : states.values()) {
+            Iterator<State> it = flows.values().iterator();
+            while (it.hasNext()) {
+                if (it.next().programmed < horizon) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    public void removeNode(Node node) {
+        states.remove(node);
+    }
+
+    public int size() {
+        int size = 0;
+        for (ConcurrentMap<FlowShadowTable.Key, State> flows : states.values()) {
+            size += flows.size();
+        }
+        return size;
+    }
+
+    /**
+     * Mean timeout over the tracked flows, in seconds.
+     */
+    public long getMeanTimeout() {
+        long sum = 0;
+        long count = 0;
+        for (ConcurrentMap<FlowShadowTable.Key, State> flows : states.values()) {
+            for (State state : flows.values()) {
+                sum += state.timeout;
+                count++;
+            }
+        }
+        return (count == 0) ? min : sum / count;
+    }
+
+    private static final class State {
+        final short timeout;
+        final long programmed;
+        final long removed;
+        // Removed by the controller since it was last programmed
+        final boolean invalidated;
+
+        State(short timeout, long programmed, long removed, boolean invalidated) {
+            this.timeout = timeout;
+            this.programmed = programmed;
+            this.removed = removed;
+            this.invalidated = invalidated;
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package org.sdnhub.learningswitch.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.opendaylight.controller.sal.action.Action;
+import org.opendaylight.controller.sal.action.Output;
+import org.opendaylight.controller.sal.core.ConstructionException;
+import org.opendaylight.controller.sal.core.Node;
+import org.opendaylight.controller.sal.core.NodeConnector;
+import org.opendaylight.controller.sal.flowprogrammer.Flow;
+import org.opendaylight.controller.sal.match.Match;
+import org.opendaylight.controller.sal.match.MatchField;
+import org.opendaylight.controller.sal.match.MatchType;
+import org.opendaylight.controller.sal.packet.IDataPacketService;
+import org.opendaylight.controller.sal.packet.RawPacket;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Captive-portal admission for the switch mode forwarding path.
+ *
+ * Authorized hosts are kept in a {@link MacSet}, so checking a packet-in is a
+ * couple of array reads and never allocates. Unicast from a host that is not
+ * authorized is sent out of the portal port instead of being forwarded, and
+ * no flow is installed for it; talking to the portal itself, and broadcast or
+ * multicast (ARP, DHCP), is always allowed.
+ *
+ * Authorizing a host installs allow flows in both directions between it and
+ * every other authorized host already learned on its switch, so its traffic
+ * stays on the switch from then on. Revoking it removes those flows again
+ * together with the forwarding flows learned from it. All of these match on
+ * the source MAC as well as the ingress port, so another host sharing the
+ * port cannot ride on them. Hub mode floods without looking at hosts at all
+ * and is not available while admission control is enabled.
+ */
+public class AdmissionControl {
+    protected static final Logger logger = LoggerFactory.getLogger(AdmissionControl.class);
+
+    static final int DEFAULT_PRIORITY = 20;
+    static final short DEFAULT_IDLE_TIMEOUT = 300;
+
+    private final MacSet authorized = new MacSet();
+    private final boolean enabled;
+    private final NodeConnector portalPort;
+    private final long portalMac;
+    private final short priority;
+    private final short idleTimeout;
+
+    private final StripedCounter redirected = new StripedCounter();
+    private final StripedCounter dropped = new StripedCounter();
+
+    /**
+     * @param portalPort
+     *            port unauthorized traffic is sent to, or null to drop it
+     * @param portalMac
+     *            MAC of the portal, or -1 if the portal has no fixed address
+     */
+    public AdmissionControl(boolean enabled, NodeConnector portalPort, long portalMac,
+            int priority, int idleTimeout) {
+        this.enabled = enabled;
+        this.portalPort = portalPort;
+        this.portalMac = portalMac;
+        this.priority = (short) priority;
+        this.idleTimeout = (short) idleTimeout;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * True if the packet may be forwarded normally.
+     */
+    public boolean admits(long srcMac, long dstMac) {
+        return !enabled
+                || EthernetHeader.isGroupMAC(dstMac)
+                || srcMac == portalMac
+                || dstMac == portalMac
+                || authorized.contains(srcMac);
+    }
+
+    public boolean isAuthorized(long mac) {
+        return authorized.contains(mac);
+    }
+
+    /**
+     * Sends the packet out of the portal port, or drops it if no portal port
+     * is configured.
+     */
+    public void redirect(RawPacket inPkt, IDataPacketService dataPacketService) {
+        if (portalPort == null || dataPacketService == null
+                || portalPort.equals(inPkt.getIncomingNodeConnector())) {
+            dropped.increment();
+            return;
+        }
+        try {
+            RawPacket destPkt = new RawPacket(inPkt);
+            destPkt.setOutgoingNodeConnector(portalPort);
+            dataPacketService.transmitDataPacket(destPkt);
+            redirected.increment();
+        } catch (ConstructionException e) {
+            dropped.increment();
+            logger.debug("Failed to copy packet for the portal", e);
+        }
+    }
+
+    /**
+     * Adds the host and queues its allow flows.
+     *
+     * @return false if the host was already authorized
+     */
+    public boolean authorize(long mac, MacTable macTable, FlowInstaller flowInstaller) {
+        if (!authorized.add(mac)) {
+            return false;
+        }
+        if (flowInstaller != null) {
+            for (NodeConnector hostPort : macTable.locate(mac)) {
+                for (Flow flow : allowFlows(mac, hostPort, macTable)) {
+                    flowInstaller.submit(hostPort.getNode(), flow);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Removes the host and queues removal of its allow flows and of the
+     * forwarding flows matching on it as the source.
+     *
+     * @return false if the host was not authorized
+     */
+    public boolean revoke(final long mac, MacTable macTable, final FlowInstaller flowInstaller) {
+        if (!authorized.remove(mac)) {
+            return false;
+        }
+        if (flowInstaller != null) {
+            for (final NodeConnector hostPort : macTable.locate(mac)) {
+                final Node node = hostPort.getNode();
+                for (Flow flow : allowFlows(mac, hostPort, macTable)) {
+                    flowInstaller.submitRemoval(node, flow);
+                }
+                macTable.forEach(node, new MacTable.Visitor() {
+                    @Override
+                    public void visit(Node n, long dst, NodeConnector port, long lastSeen) {
+                        if (!port.equals(hostPort)) {
+                            flowInstaller.submitRemoval(node,
+                                    flow(hostPort, mac, dst, port, (short) 0, (short) 0));
+                        }
+                    }
+                });
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Moves an authorized host's allow flows from its old port to its new
+     * one. Does nothing for hosts that are not authorized.
+     */
+    public void relocate(long mac, NodeConnector from, NodeConnector to, MacTable macTable,
+            FlowInstaller flowInstaller) {
+        if (!enabled || flowInstaller == null || !authorized.contains(mac)) {
+            return;
+        }
+        for (Flow flow : allowFlows(mac, from, macTable)) {
+            flowInstaller.submitRemoval(from.getNode(), flow);
+        }
+        for (Flow flow : allowFlows(mac, to, macTable)) {
+            flowInstaller.submit(to.getNode(), flow);
+        }
+    }
+
+    public int getAuthorizedCount() {
+        return authorized.size();
+    }
+
+    public long[] getAuthorized() {
+        return authorized.toArray();
+    }
+
+    public long getRedirectedCount() {
+        return redirected.sum();
+    }
+
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * Flows between the host and every authorized host (or the portal)
+     * learned on the same switch behind a different port.
+     */
+    private List<Flow> allowFlows(final long mac, final NodeConnector hostPort, MacTable macTable) {
+        final List<Flow> flows = new ArrayList<Flow>();
+        macTable.forEach(hostPort.getNode(), new MacTable.Visitor() {
+            @Override
+            public void visit(Node node, long peer, NodeConnector peerPort, long lastSeen) {
+                if (peer == mac || peerPort.equals(hostPort)
+                        || (peer != portalMac && !authorized.contains(peer))) {
+                    return;
+                }
+                flows.add(flow(hostPort, mac, peer, peerPort, priority, idleTimeout));
+                flows.add(flow(peerPort, peer, mac, hostPort, priority, idleTimeout));
+            }
+        });
+        return flows;
+    }
+
+    private static Flow flow(NodeConnector inPort, long srcMac, long dstMac,
+            NodeConnector outPort, short priority, short idleTimeout) {
+        Match match = new Match();
+        match.setField(new MatchField(MatchType.IN_PORT, inPort));
+        match.setField(new MatchField(MatchType.DL_SRC, EthernetHeader.toBytes(srcMac)));
+        match.setField(new MatchField(MatchType.DL_DST, EthernetHeader.toBytes(dstMac)));
+        List<Action> actions = new ArrayList<Action>();
+        actions.add(new Output(outPort));
+        Flow f = new Flow(match, actions);
+        f.setIdleTimeout(idleTimeout);
+        if (priority > 0) {
+            f.setPriority(priority);
+        }
+        return f;
+    }
+}
@@ -0,0 +1,226 @@
+package org.sdnhub.learningswitch.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.opendaylight.controller.sal.core.Edge;
+import org.opendaylight.controller.sal.core.Node;
+import org.opendaylight.controller.sal.core.NodeConnector;
+
+/**
+ * Spanning tree over the inter-switch links, used to keep floods loop free.
+ *
+ * Links are added to the tree with a union-find: a link joining two switches
+ * that are not yet connected becomes a tree link, any other link is blocked.
+ * Adding a link or removing a blocked one therefore never moves existing
+ * tree links; only losing a tree link forces the tree to be rebuilt. Ports on
+ * blocked links must neither flood nor accept floods, edge ports (those with
+ * no link to another switch) are unaffected.
+ *
+ * Topology reports each direction of a link as its own edge. A link stays
+ * up for as long as either direction is reported.
+ */
+public class BroadcastTree {
+    // Directions currently reported for each link, see Link.direction
+    private final Map<Link, Integer> links = new LinkedHashMap<Link, Integer>();
+    private final Set<Link> treeLinks = new HashSet<Link>();
+    private final Map<Node, Node> parent = new HashMap<Node, Node>();
+
+    private volatile Set<NodeConnector> blocked = Collections.emptySet();
+
+    /**
+     * True if the port is on an inter-switch link outside the tree.
+     */
+    public boolean isBlocked(NodeConnector port) {
+        return blocked.contains(port);
+    }
+
+    public int getBlockedPortCount() {
+        return blocked.size();
+    }
+
+    public boolean hasBlockedPort(Node node) {
+        for (NodeConnector port : blocked) {
+            if (node.equals(port.getNode())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public List<NodeConnector> getBlockedPorts(Node node) {
+        List<NodeConnector> ports = new ArrayList<NodeConnector>();
+        for (NodeConnector port : blocked) {
+            if (node.equals(port.getNode())) {
+                ports.add(port);
+            }
+        }
+        return ports;
+    }
+
+    /**
+     * @return true if the set of blocked ports changed
+     */
+    public synchronized boolean addEdge(Edge edge) {
+        Link link = Link.of(edge);
+        if (link == null) {
+            return false;
+        }
+        Integer directions = links.get(link);
+        if (directions != null) {
+            links.put(link, directions | link.direction(edge));
+            return false;
+        }
+        links.put(link, link.direction(edge));
+        if (union(link.a.getNode(), link.b.getNode())) {
+            treeLinks.add(link);
+        }
+        return publish();
+    }
+
+    /**
+     * @return true if the set of blocked ports changed
+     */
+    public synchronized boolean removeEdge(Edge edge) {
+        Link link = Link.of(edge);
+        Integer directions = (link == null) ? null : links.get(link);
+        if (directions == null) {
+            return false;
+        }
+        int remaining = directions & ~link.direction(edge);
+        if (remaining != 0) {
+            links.put(link, remaining);
+            return false;
+        }
+        links.remove(link);
+        if (treeLinks.remove(link)) {
+            rebuild();
+        }
+        return publish();
+    }
+
+    public synchronized boolean reset(Set<Edge> edges) {
+        links.clear();
+        for (Edge edge : edges) {
+            Link link = Link.of(edge);
+            if (link != null) {
+                Integer directions = links.get(link);
+                links.put(link, (directions == null) ? link.direction(edge)
+                        : directions | link.direction(edge));
+            }
+        }
+        rebuild();
+        return publish();
+    }
+
+    private void rebuild() {
+        parent.clear();
+        treeLinks.clear();
+        for (Link link : links.keySet()) {
+            if (union(link.a.getNode(), link.b.getNode())) {
+                treeLinks.add(link);
+            }
+        }
+    }
+
+    private boolean publish() {
+        Set<NodeConnector> updated = new HashSet<NodeConnector>();
+        for (Link link : links.keySet()) {
+            if (!treeLinks.contains(link)) {
+                updated.add(link.a);
+                updated.add(link.b);
+            }
+        }
+        // A port that also carries a tree link (e.g. a shared segment) stays open
+        for (Link link : treeLinks) {
+            updated.remove(link.a);
+            updated.remove(link.b);
+        }
+        if (updated.equals(blocked)) {
+            return false;
+        }
+        blocked = Collections.unmodifiableSet(updated);
+        return true;
+    }
+
+    private Node find(Node node) {
+        Node root = node;
+        Node next;
+        while ((next = parent.get(root)) != null && !next.equals(root)) {
+            root = next;
+        }
+        // Path compression
+        while (!node.equals(root)) {
+            next = parent.get(node);
+            parent.put(node, root);
+            node = next;
+        }
+        return root;
+    }
+
+    /**
+     * @return true if the two switches were in different components
+     */
+    private boolean union(Node a, Node b) {
+        Node rootA = find(a);
+        Node rootB = find(b);
+        if (rootA.equals(rootB)) {
+            return false;
+        }
+        parent.put(rootA, rootB);
+        return true;
+    }
+
+    /**
+     * Undirected inter-switch link; topology reports one edge per direction.
+     */
+    private static final class Link {
+        final NodeConnector a;
+        final NodeConnector b;
+
+        private Link(NodeConnector a, NodeConnector b) {
+            this.a = a;
+            this.b = b;
+        }
+
+        static Link of(Edge edge) {
+            NodeConnector tail = edge.getTailNodeConnector();
+            NodeConnector head = edge.getHeadNodeConnector();
+            if (tail == null || head == null || tail.getNode() == null || head.getNode() == null
+                    || tail.getNode().equals(head.getNode())) {
+                return null;
+            }
+            return new Link(tail, head);
+        }
+
+        /**
+         * One bit per direction, the same whichever direction the link was
+         * first seen in.
+         */
+        int direction(Edge edge) {
+            String tail = edge.getTailNodeConnector().toString();
+            return (tail.compareTo(edge.getHeadNodeConnector().toString()) < 0) ? 1 : 2;
+        }
+
+        @Override
+        public int hashCode() {
+            return a.hashCode() ^ b.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Link)) {
+                return false;
+            }
+            Link other = (Link) obj;
+            return (a.equals(other.a) && b.equals(other.b))
+                    || (a.equals(other.b) && b.equals(other.a));
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package org.sdnhub.learningswitch.internal;
+
+/**
+ * Reads Ethernet header fields straight out of a raw frame. Unlike
+ * {@code IDataPacketService.decodeDataPacket} this builds no packet objects
+ * and copies no arrays, which is all the forwarding path needs.
+ */
+public final class EthernetHeader {
+    public static final int MIN_LENGTH = 14;
+    public static final int ETHERTYPE_VLAN = 0x8100;
+    public static final int ETHERTYPE_LLDP = 0x88cc;
+
+    private static final int DST_OFFSET = 0;
+    private static final int SRC_OFFSET = 6;
+    private static final int ETHERTYPE_OFFSET = 12;
+    private static final int VLAN_TAG_LENGTH = 4;
+
+    private EthernetHeader() {
+    }
+
+    public static boolean isValid(byte[] frame) {
+        return frame != null && frame.length >= MIN_LENGTH;
+    }
+
+    public static long getDestinationMAC(byte[] frame) {
+        return readMAC(frame, DST_OFFSET);
+    }
+
+    public static long getSourceMAC(byte[] frame) {
+        return readMAC(frame, SRC_OFFSET);
+    }
+
+    /**
+     * Returns the ethertype of the payload, looking past a single 802.1Q tag.
+     */
+    public static int getEtherType(byte[] frame) {
+        int etherType = readShort(frame, ETHERTYPE_OFFSET);
+        if (etherType == ETHERTYPE_VLAN
+                && frame.length >= MIN_LENGTH + VLAN_TAG_LENGTH) {
+            etherType = readShort(frame, ETHERTYPE_OFFSET + VLAN_TAG_LENGTH);
+        }
+        return etherType;
+    }
+
+    /**
+     * True for broadcast and multicast destinations (I/G bit set).
+     */
+    public static boolean isGroupMAC(long mac) {
+        return (mac & 0x010000000000L) != 0;
+    }
+
+    /**
+     * Expands a MAC value back into the 6-byte form used by match fields.
+     */
+    public static byte[] toBytes(long mac) {
+        byte[] bytes = new byte[6];
+        for (int i = 5; i >= 0; i--) {
+            bytes[i] = (byte) mac;
+            mac >>>= 8;
+        }
+        return bytes;
+    }
+
+    /**
+     * Parses "00:11:22:33:44:55" (':' or '-' separated).
+     *
+     * @throws IllegalArgumentException
+     *             if the string is not a MAC address
+     */
+    public static long parseMAC(String mac) {
+        String[] octets = (mac == null) ? new String[0] : mac.trim().split("[:-]");
+        if (octets.length != 6) {
+            throw new IllegalArgumentException("Invalid MAC address: " + mac);
+        }
+        long value = 0;
+        for (String octet : octets) {
+            int b;
+            try {
+                b = Integer.parseInt(octet, 16);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid MAC address: " + mac);
+            }
+            if (octet.length() > 2 || b < 0 || b > 0xff) {
+                throw new IllegalArgumentException("Invalid MAC address: " + mac);
+            }
+            value = (value << 8) | b;
+        }
+        return value;
+    }
+
+    public static String formatMAC(long mac) {
+        StringBuilder sb = new StringBuilder(17);
+        for (int shift = 40; shift >= 0; shift -= 8) {
+            int b = (int) (mac >>> shift) & 0xff;
+            if (shift != 40) {
+                sb.append(':');
+            }
+            sb.append(Character.forDigit(b >>> 4, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+
+    private static long readMAC(byte[] frame, int offset) {
+        return ((frame[offset] & 0xffL) << 40)
+                | ((frame[offset + 1] & 0xffL) << 32)
+                | ((frame[offset + 2] & 0xffL) << 24)
+                | ((frame[offset + 3] & 0xffL) << 16)
+                | ((frame[offset + 4] & 0xffL) << 8)
+                | (frame[offset + 5] & 0xffL);
+    }
+
+    private static int readShort(byte[] frame, int offset) {
+        return ((frame[offset] & 0xff) << 8) | (frame[offset + 1] & 0xff);
+    }
+}
@@ -0,0 +1,154 @@
+package org.sdnhub.learningswitch.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded multi-producer event log that consumers read by sequence number.
+ *
+ * Publishing claims a sequence with one atomic increment and stores the
+ * event in its slot; it never waits, and once the ring is full the oldest
+ * events are simply overwritten. Each consumer keeps its own cursor, so a
+ * slow consumer only ever loses events (and is told how many) instead of
+ * holding up producers or other consumers.
+ *
+ * Consumers may block waiting for new events. Producers wake them only if
+ * somebody is waiting and the wake-up lock is free; a missed wake-up is
+ * picked up by the waiter's next timed recheck.
+ */
+public class EventRing<E> {
+    static final int DEFAULT_CAPACITY = 4096;
+
+    private static final long RECHECK_MILLIS = 100L;
+
+    private final AtomicReferenceArray<Slot<E>> slots;
+    private final int mask;
+    private final AtomicLong next = new AtomicLong();
+    private final AtomicInteger waiters = new AtomicInteger();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition published = lock.newCondition();
+
+    public EventRing(int capacity) {
+        int size = MacTable.tableSizeFor(capacity);
+        this.slots = new AtomicReferenceArray<Slot<E>>(size);
+        this.mask = size - 1;
+    }
+
+    public void publish(E event) {
+        long seq = next.getAndIncrement();
+        slots.set((int) (seq & mask), new Slot<E>(seq, event));
+        if (waiters.get() > 0 && lock.tryLock()) {
+            try {
+                published.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Sequence number the next event will get.
+     */
+    public long head() {
+        return next.get();
+    }
+
+    /**
+     * Returns the events from cursor on without waiting.
+     *
+     * @param cursor
+     *            first sequence wanted, negative to start at the head
+     */
+    public Batch<E> read(long cursor, int max) {
+        long head = next.get();
+        if (cursor < 0 || cursor > head) {
+            cursor = head;
+        }
+        long missed = 0;
+        int capacity = mask + 1;
+        if (head - cursor > capacity) {
+            missed = head - capacity - cursor;
+            cursor = head - capacity;
+        }
+        List<E> events = new ArrayList<E>((int) Math.min(head - cursor, Math.max(max, 0)));
+        while (cursor < head && events.size() < max) {
+            Slot<E> slot = slots.get((int) (cursor & mask));
+            if (slot == null || slot.seq < cursor) {
+                // Claimed but not stored yet, pick it up next time
+                break;
+            }
+            if (slot.seq > cursor) {
+                // Lapped by producers while reading
+                missed++;
+            } else {
+                events.add(slot.event);
+            }
+            cursor++;
+        }
+        return new Batch<E>(events, cursor, missed);
+    }
+
+    /**
+     * Waits up to timeout for an event at or after cursor. Once one is
+     * there, waits a further linger so that events arriving close together
+     * go out as one batch, then reads.
+     */
+    public Batch<E> poll(long cursor, int max, long timeoutMillis, long lingerMillis)
+            throws InterruptedException {
+        if (cursor < 0 || cursor > next.get()) {
+            cursor = next.get();
+        }
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        if (next.get() <= cursor && timeoutMillis > 0) {
+            waiters.incrementAndGet();
+            try {
+                long remaining;
+                while (next.get() <= cursor
+                        && (remaining = deadline - System.currentTimeMillis()) > 0) {
+                    lock.lock();
+                    try {
+                        if (next.get() <= cursor) {
+                            published.await(Math.min(remaining, RECHECK_MILLIS), TimeUnit.MILLISECONDS);
+                        }
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+            } finally {
+                waiters.decrementAndGet();
+            }
+            if (next.get() > cursor && lingerMillis > 0) {
+                Thread.sleep(Math.min(lingerMillis, Math.max(deadline - System.currentTimeMillis(), 0)));
+            }
+        }
+        return read(cursor, max);
+    }
+
+    public static final class Batch<E> {
+        public final List<E> events;
+        public final long next;
+        public final long missed;
+
+        Batch(List<E> events, long next, long missed) {
+            this.events = events;
+            this.next = next;
+            this.missed = missed;
+        }
+    }
+
+    private static final class Slot<E> {
+        final long seq;
+        final E event;
+
+        Slot(long seq, E event) {
+            this.seq = seq;
+            this.event = event;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package org.sdnhub.learningswitch.internal;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opendaylight.controller.sal.core.Node;
+
+/**
+ * Damping of MACs that keep moving between ports, in the style of route
+ * flap damping.
+ *
+ * Every move adds a fixed penalty to the MAC's figure on that switch, and
+ * the figure decays exponentially with the configured half-life. Once it
+ * crosses the suppress threshold the MAC is suppressed: no flows are
+ * programmed towards it until the penalty has decayed below the (lower)
+ * reuse threshold. Only MACs that have moved are tracked at all, so the
+ * check on the forwarding path is a map miss for everything else.
+ */
+public class FlapDamping {
+    static final long DEFAULT_HALF_LIFE = 30000L;
+    static final int DEFAULT_SUPPRESS = 3000;
+    static final int DEFAULT_REUSE = 1500;
+
+    private static final double PENALTY = 1000.0;
+
+    private final ConcurrentMap<Node, ConcurrentMap<Long, State>> states =
+            new ConcurrentHashMap<Node, ConcurrentMap<Long, State>>();
+    private final long halfLife;
+    private final double suppress;
+    private final double reuse;
+    private final double ceiling;
+    private final AtomicLong damped = new AtomicLong();
+
+    /**
+     * @param halfLife
+     *            milliseconds for a penalty to halve, 0 to disable damping
+     */
+    public FlapDamping(long halfLife, int suppress, int reuse) {
+        this.halfLife = Math.max(halfLife, 0L);
+        this.suppress = suppress;
+        this.reuse = Math.min(reuse, suppress);
+        // Bounded so a long flap is forgiven within a few half-lives of it
+        // stopping
+        this.ceiling = 4.0 * suppress;
+    }
+
+    public boolean isEnabled() {
+        return halfLife > 0;
+    }
+
+    /**
+     * Records a move of the MAC on the node.
+     *
+     * @return true if the MAC is suppressed after this move
+     */
+    public boolean moved(Node node, long mac, long now) {
+        if (halfLife == 0) {
+            return false;
+        }
+        ConcurrentMap<Long, State> macs = states.get(node);
+        if (macs == null) {
+            ConcurrentMap<Long, State> created = new ConcurrentHashMap<Long, State>();
+            macs = states.putIfAbsent(node, created);
+            if (macs == null) {
+                macs = created;
+            }
+        }
+        State state = macs.get(mac);
+        if (state == null) {
+            State created = new State(now);
+            state = macs.putIfAbsent(mac, created);
+            if (state == null) {
+                state = created;
+            }
+        }
+        synchronized (state) {
+            state.decay(now);
+            state.penalty = Math.min(state.penalty + PENALTY, ceiling);
+            if (!state.suppressed && state.penalty >= suppress) {
+                state.suppressed = true;
+                damped.incrementAndGet();
+            }
+            return state.suppressed;
+        }
+    }
+
+    /**
+     * True if flows towards the MAC on the node must not be programmed.
+     */
+    public boolean isSuppressed(Node node, long mac, long now) {
+        if (states.isEmpty()) {
+            return false;
+        }
+        ConcurrentMap<Long, State> macs = states.get(node);
+        if (macs == null) {
+            return false;
+        }
+        State state = macs.get(mac);
+        if (state == null) {
+            return false;
+        }
+        synchronized (state) {
+            state.decay(now);
+            return state.suppressed;
+        }
+    }
+
+    /**
+     * Forgets MACs whose penalty has decayed to next to nothing.
+     */
+    public void expire(long now) {
+        for (ConcurrentMap<Long, State> macs : states.values()) {
+            Iterator<State> it = macs.values().iterator();
+            while (it.hasNext()) {
+                State state = it.next();
+                synchronized (state) {
+                    state.decay(now);
+                    if (!state.suppressed && state.penalty < PENALTY / 4) {
+                        it.remove();
+                    }
+                }
+            }
+        }
+    }
+
+    public void removeNode(Node node) {
+        states.remove(node);
+    }
+
+    /**
+     * Number of MACs currently suppressed.
+     */
+    public int getSuppressedCount() {
+        int count = 0;
+        for (ConcurrentMap<Long, State> macs : states.values()) {
+            for (State state : macs.values()) {
+                synchronized (state) {
+                    if (state.suppressed) {
+                        count++;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Number of times a MAC became suppressed.
+     */
+    public long getDampedCount() {
+        return damped.get();
+    }
+
+    private final class State {
+        double penalty;
+        long updated;
+        boolean suppressed;
+
+        State(long now) {
+            this.updated = now;
+        }
+
+        void decay(long now) {
+            if (now > updated) {
+                penalty *= Math.pow(0.5, (double) (now - updated) / halfLife);
+                updated = now;
+            }
+            if (suppressed && penalty < reuse) {
+                suppressed = false;
+            }
+        }
+    }
+}
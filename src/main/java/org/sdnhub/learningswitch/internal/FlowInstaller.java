@@ -0,0 +1,458 @@
+package org.sdnhub.learningswitch.internal;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opendaylight.controller.sal.core.Node;
+import org.opendaylight.controller.sal.flowprogrammer.Flow;
+import org.opendaylight.controller.sal.flowprogrammer.IFlowProgrammerService;
+import org.opendaylight.controller.sal.match.Match;
+import org.opendaylight.controller.sal.packet.IDataPacketService;
+import org.opendaylight.controller.sal.packet.RawPacket;
+import org.opendaylight.controller.sal.utils.Status;
+import org.opendaylight.controller.sal.utils.StatusCode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Programs flows off the packet-in thread.
+ *
+ * Every switch gets its own queue of pending flow adds and removes keyed by
+ * match, so a burst of operations on the same match collapses into the
+ * latest one. A queue is drained by at most one worker at a time, a batch at
+ * a time, which keeps per-switch ordering while a slow switch only ever ties
+ * up a single worker.
+ * Queues are bounded; once a switch has too many flows pending further
+ * submissions are refused rather than buffered.
+ *
+ * An add may carry the packets that triggered it. They are sent out of the
+ * switch by the same worker once the batch holding their flow has been
+ * programmed, so they neither get lost nor overtake the flow.
+ *
+ * Coalescing is by match alone, so a removal may replace a pending add and
+ * vice versa. Packets held for a replaced add only move to its replacement
+ * if that is an add with the same actions; otherwise they were addressed
+ * for a flow that is no longer wanted and are sent straight away. Only the operation that is finally applied is reported to
+ * the listener, which must therefore compare flow identity before acting
+ * on it.
+ */
+public class FlowInstaller {
+    protected static final Logger logger = LoggerFactory.getLogger(FlowInstaller.class);
+
+    static final int DEFAULT_WORKERS = 4;
+    static final int DEFAULT_MAX_PENDING = 1024;
+    static final int DEFAULT_BATCH_SIZE = 32;
+
+    /**
+     * Packets held back per pending flow; the rest of a burst is sent
+     * straight away.
+     */
+    private static final int MAX_HELD_PACKETS = 16;
+
+    /**
+     * Outcome of a flow operation, invoked on the worker thread.
+     */
+    public interface Listener {
+        void flowInstalled(Node node, Flow flow);
+
+        void flowRemoved(Node node, Flow flow);
+
+        /**
+         * @param removal
+         *            true if the flow could not be removed, false if it
+         *            could not be added
+         */
+        void flowFailed(Node node, Flow flow, boolean removal, Status status);
+    }
+
+    private final ConcurrentMap<Node, NodeQueue> queues = new ConcurrentHashMap<Node, NodeQueue>();
+    private final ExecutorService executor;
+    private final int maxPending;
+    private final int batchSize;
+    private final Listener listener;
+    private volatile IFlowProgrammerService programmer;
+    private volatile IDataPacketService dataPacketService;
+
+    private final AtomicLong installed = new AtomicLong();
+    private final AtomicLong removed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong released = new AtomicLong();
+
+    public FlowInstaller(IFlowProgrammerService programmer, int workers, int maxPending,
+            int batchSize, Listener listener) {
+        this.programmer = programmer;
+        this.maxPending = Math.max(maxPending, 1);
+        this.batchSize = Math.max(batchSize, 1);
+        this.listener = listener;
+        this.executor = Executors.newFixedThreadPool(Math.max(workers, 1), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "learningswitch-flow-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    public void setFlowProgrammerService(IFlowProgrammerService programmer) {
+        this.programmer = programmer;
+    }
+
+    public void setDataPacketService(IDataPacketService dataPacketService) {
+        this.dataPacketService = dataPacketService;
+    }
+
+    /**
+     * Queues the flow for installation on the node. A flow already pending
+     * with the same match is replaced.
+     *
+     * @return false if the node's queue is full or the installer is shut down
+     */
+    public boolean submit(Node node, Flow flow) {
+        return enqueue(node, new Operation(flow, false));
+    }
+
+    /**
+     * Queues the flow for installation and the packet, already addressed to
+     * its outgoing port, to be sent right after it.
+     */
+    public boolean submit(Node node, Flow flow, RawPacket packet) {
+        Operation op = new Operation(flow, false);
+        op.hold(packet);
+        return enqueue(node, op);
+    }
+
+    /**
+     * Holds the packet until the pending add of the flow has been applied.
+     *
+     * @return false if the flow is no longer pending (or too many packets
+     *         are held for it already), in which case the caller should
+     *         send the packet itself
+     */
+    public boolean release(Node node, Flow flow, RawPacket packet) {
+        NodeQueue queue = queues.get(node);
+        return queue != null && queue.hold(flow.getMatch(), packet);
+    }
+
+    /**
+     * Queues removal of the flow from the node, replacing any pending add
+     * with the same match.
+     */
+    public boolean submitRemoval(Node node, Flow flow) {
+        return enqueue(node, new Operation(flow, true));
+    }
+
+    private boolean enqueue(Node node, Operation op) {
+        boolean queued = queueFor(node).offer(op);
+        // Sent outside the queue lock, like the held packets of a batch
+        List<RawPacket> displaced = op.displaced;
+        if (displaced != null) {
+            op.displaced = null;
+            transmit(displaced);
+        }
+        return queued;
+    }
+
+    private void transmit(List<RawPacket> packets) {
+        IDataPacketService service = dataPacketService;
+        if (service == null) {
+            return;
+        }
+        for (RawPacket packet : packets) {
+            service.transmitDataPacket(packet);
+        }
+    }
+
+    private NodeQueue queueFor(Node node) {
+        NodeQueue queue = queues.get(node);
+        if (queue == null) {
+            NodeQueue created = new NodeQueue(node);
+            queue = queues.putIfAbsent(node, created);
+            if (queue == null) {
+                queue = created;
+            }
+        }
+        return queue;
+    }
+
+    /**
+     * Discards everything still pending for the node.
+     */
+    public void removeNode(Node node) {
+        NodeQueue queue = queues.remove(node);
+        if (queue != null) {
+            queue.clear();
+        }
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+        queues.clear();
+    }
+
+    public long getInstalledCount() {
+        return installed.get();
+    }
+
+    public long getRemovedCount() {
+        return removed.get();
+    }
+
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    public long getCoalescedCount() {
+        return coalesced.get();
+    }
+
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * Packets sent after the flow they triggered.
+     */
+    public long getReleasedCount() {
+        return released.get();
+    }
+
+    public int getPendingCount() {
+        int pending = 0;
+        for (NodeQueue queue : queues.values()) {
+            pending += queue.size();
+        }
+        return pending;
+    }
+
+    private static final class Operation {
+        final Flow flow;
+        final boolean remove;
+        // Guarded by the owning NodeQueue
+        List<RawPacket> packets;
+        // Packets of the operation this one replaced that must not wait for
+        // it; only touched by the submitting thread
+        List<RawPacket> displaced;
+
+        Operation(Flow flow, boolean remove) {
+            this.flow = flow;
+            this.remove = remove;
+        }
+
+        /**
+         * True if packets held for this operation may wait for the other
+         * one instead.
+         */
+        boolean sameAdd(Operation other) {
+            return !remove && !other.remove
+                    && flow.getActions().equals(other.flow.getActions());
+        }
+
+        boolean hold(RawPacket packet) {
+            if (packets == null) {
+                packets = new ArrayList<RawPacket>(2);
+            } else if (packets.size() >= MAX_HELD_PACKETS) {
+                return false;
+            }
+            packets.add(packet);
+            return true;
+        }
+    }
+
+    private final class NodeQueue implements Runnable {
+        private final Node node;
+        private final LinkedHashMap<Match, Operation> pending = new LinkedHashMap<Match, Operation>();
+        // Taken off pending but with packets not sent yet
+        private List<Operation> inFlight;
+        private boolean scheduled;
+
+        NodeQueue(Node node) {
+            this.node = node;
+        }
+
+        synchronized boolean offer(Operation op) {
+            Match match = op.flow.getMatch();
+            Operation replaced = pending.get(match);
+            if (replaced != null) {
+                if (replaced.packets != null) {
+                    if (!replaced.sameAdd(op)) {
+                        // Addressed for the replaced flow, don't let them
+                        // follow a flow that forwards elsewhere or nowhere
+                        op.displaced = replaced.packets;
+                    } else if (op.packets != null) {
+                        // Held packets go out after this one, oldest first
+                        replaced.packets.addAll(op.packets);
+                        op.packets = replaced.packets;
+                    } else {
+                        op.packets = replaced.packets;
+                    }
+                    replaced.packets = null;
+                }
+                pending.put(match, op);
+                coalesced.incrementAndGet();
+                return true;
+            }
+            if (pending.size() >= maxPending) {
+                rejected.incrementAndGet();
+                return false;
+            }
+            pending.put(match, op);
+            if (!scheduled) {
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException e) {
+                    pending.remove(match);
+                    rejected.incrementAndGet();
+                    return false;
+                }
+                scheduled = true;
+            }
+            return true;
+        }
+
+        synchronized boolean hold(Match match, RawPacket packet) {
+            Operation op = pending.get(match);
+            if (op == null && inFlight != null) {
+                for (Operation taken : inFlight) {
+                    if (taken.flow.getMatch().equals(match)) {
+                        op = taken;
+                        break;
+                    }
+                }
+            }
+            return op != null && !op.remove && op.hold(packet);
+        }
+
+        synchronized int size() {
+            return pending.size();
+        }
+
+        synchronized void clear() {
+            pending.clear();
+        }
+
+        private synchronized List<Operation> takeBatch() {
+            List<Operation> batch = new ArrayList<Operation>(Math.min(pending.size(), batchSize));
+            Iterator<Operation> it = pending.values().iterator();
+            while (it.hasNext() && batch.size() < batchSize) {
+                batch.add(it.next());
+                it.remove();
+            }
+            inFlight = batch;
+            return batch;
+        }
+
+        /**
+         * Detaches the packets held for the batch once all of its flows
+         * have been programmed. From here on, packets for these flows are
+         * no longer held and go straight out.
+         */
+        private synchronized List<RawPacket> takeHeld(List<Operation> batch) {
+            inFlight = null;
+            List<RawPacket> held = null;
+            for (Operation op : batch) {
+                if (op.packets == null) {
+                    continue;
+                }
+                if (held == null) {
+                    held = new ArrayList<RawPacket>();
+                }
+                held.addAll(op.packets);
+                op.packets = null;
+            }
+            return held;
+        }
+
+        /**
+         * Sends held packets without the queue lock, so packet-in threads
+         * queueing flows for this switch never wait on the transmit path.
+         */
+        private void sendHeld(List<RawPacket> held) {
+            IDataPacketService service = dataPacketService;
+            if (held == null || service == null) {
+                return;
+            }
+            for (RawPacket packet : held) {
+                service.transmitDataPacket(packet);
+                released.incrementAndGet();
+            }
+        }
+
+        /**
+         * Clears the scheduled flag if there is nothing left to do, so the
+         * next offer hands the queue to a worker again.
+         */
+        private synchronized boolean finishBatch() {
+            if (pending.isEmpty()) {
+                scheduled = false;
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        public void run() {
+            List<Operation> batch = takeBatch();
+            for (Operation op : batch) {
+                apply(op);
+            }
+            sendHeld(takeHeld(batch));
+            if (finishBatch()) {
+                // Requeue rather than loop so other switches get a turn
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException e) {
+                    clear();
+                }
+            }
+        }
+
+        private void apply(Operation op) {
+            Flow flow = op.flow;
+            IFlowProgrammerService service = programmer;
+            Status status;
+            if (service == null) {
+                status = new Status(StatusCode.NOSERVICE, "Flow programmer service unavailable");
+            } else {
+                try {
+                    status = op.remove ? service.removeFlow(node, flow) : service.addFlow(node, flow);
+                } catch (RuntimeException e) {
+                    logger.debug("Flow programming raised an exception on {}", node, e);
+                    status = new Status(StatusCode.INTERNALERROR, e.getMessage());
+                }
+            }
+            if (status.isSuccess()) {
+                if (op.remove) {
+                    removed.incrementAndGet();
+                    if (listener != null) {
+                        listener.flowRemoved(node, flow);
+                    }
+                } else {
+                    installed.incrementAndGet();
+                    if (listener != null) {
+                        listener.flowInstalled(node, flow);
+                    }
+                }
+            } else {
+                failed.incrementAndGet();
+                if (listener != null) {
+                    listener.flowFailed(node, flow, op.remove, status);
+                }
+            }
+        }
+    }
+}
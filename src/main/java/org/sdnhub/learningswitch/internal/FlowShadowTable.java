@@ -0,0 +1,351 @@
+package org.sdnhub.learningswitch.internal;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opendaylight.controller.sal.action.Action;
+import org.opendaylight.controller.sal.action.Output;
+import org.opendaylight.controller.sal.core.Node;
+import org.opendaylight.controller.sal.core.NodeConnector;
+import org.opendaylight.controller.sal.flowprogrammer.Flow;
+import org.opendaylight.controller.sal.match.Match;
+import org.opendaylight.controller.sal.match.MatchField;
+import org.opendaylight.controller.sal.match.MatchType;
+
+/**
+ * Controller-side view of the forwarding flows we have asked switches to
+ * install, keyed by (node, in-port, source MAC, destination MAC). The
+ * source MAC is only part of the key for flows that match on it, -1
+ * stands for a wildcarded source.
+ *
+ * While a flow is pending, or installed and still inside its idle timeout,
+ * further packet-ins for the same key are the tail of the burst that
+ * triggered it and do not need another flow-mod.
+ *
+ * Past its idle timeout a flow kept busy by traffic may still be on the
+ * switch, so its record stays until the switch reports it removed, a
+ * packet-in shows it is gone, it is invalidated, or it has been quiet for
+ * {@link #RETAIN}. That is what lets a host move take exactly the flows
+ * that may still forward to the old port off the switch.
+ */
+public class FlowShadowTable {
+    /**
+     * How long a flow may stay pending before we assume the install was lost
+     * and allow another attempt.
+     */
+    static final long PENDING_TIMEOUT = 2000L;
+
+    /**
+     * How long a record outlives the idle timeout of its flow when the
+     * switch never reports the flow removed.
+     */
+    static final long RETAIN = 3600000L;
+
+    private final ConcurrentMap<Node, ConcurrentMap<Key, Record>> nodes =
+            new ConcurrentHashMap<Node, ConcurrentMap<Key, Record>>();
+    private final AtomicLong suppressed = new AtomicLong();
+
+    /**
+     * Claims the right to install a flow for the key.
+     *
+     * @return true if the caller should program the flow, false if an
+     *         identical flow is already pending or installed
+     */
+    public boolean begin(Node node, NodeConnector inPort, long srcMac, long dstMac,
+            NodeConnector outPort, long now) {
+        ConcurrentMap<Key, Record> records = recordsFor(node);
+        Key key = new Key(node, inPort, srcMac, dstMac);
+        Record fresh = new Record(outPort, now);
+        while (true) {
+            Record current = records.putIfAbsent(key, fresh);
+            if (current == null) {
+                return true;
+            }
+            if (current.outPort.equals(outPort) && current.isLive(now)) {
+                suppressed.incrementAndGet();
+                return false;
+            }
+            if (records.replace(key, current, fresh)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Attaches the flow built after a successful {@link #begin}. Must be
+     * called before the flow is queued, since outcomes are matched to the
+     * record by flow identity.
+     *
+     * @param reactive
+     *            true if the flow answers a packet-in for its destination
+     */
+    public void submitted(Node node, NodeConnector inPort, long srcMac, long dstMac, Flow flow,
+            boolean reactive) {
+        Record record = get(node, new Key(node, inPort, srcMac, dstMac));
+        if (record != null && record.outPort.equals(outputOf(flow))) {
+            record.reactive = reactive;
+            record.flow = flow;
+        }
+    }
+
+    /**
+     * True if the flow is the one recorded for its key and was programmed
+     * in answer to a packet-in.
+     */
+    public boolean isReactive(Node node, Flow flow) {
+        Record record = recordOf(node, flow);
+        return record != null && record.reactive;
+    }
+
+    /**
+     * The flow submitted for the key, or null if there is none or it has
+     * not been built yet.
+     */
+    public Flow flowFor(Node node, NodeConnector inPort, long srcMac, long dstMac) {
+        Record record = get(node, new Key(node, inPort, srcMac, dstMac));
+        return (record == null) ? null : record.flow;
+    }
+
+    /**
+     * Forgets every flow on the node that forwards dstMac to outPort.
+     *
+     * @return the flows that may still be on the switch, to be removed
+     */
+    public List<Flow> invalidate(Node node, long dstMac, NodeConnector outPort) {
+        List<Flow> flows = new ArrayList<Flow>();
+        ConcurrentMap<Key, Record> records = nodes.get(node);
+        if (records == null) {
+            return flows;
+        }
+        for (Map.Entry<Key, Record> entry : records.entrySet()) {
+            Record record = entry.getValue();
+            if (entry.getKey().dstMac == dstMac && record.outPort.equals(outPort)
+                    && records.remove(entry.getKey(), record) && record.flow != null) {
+                flows.add(record.flow);
+            }
+        }
+        return flows;
+    }
+
+    /**
+     * Marks the flow as present on the switch until its idle timeout runs
+     * out.
+     *
+     * @return true if the flow is the one recorded for its key
+     */
+    public boolean installed(Node node, Flow flow, long now) {
+        Record record = recordOf(node, flow);
+        if (record == null) {
+            return false;
+        }
+        record.expires = now + flow.getIdleTimeout() * 1000L;
+        return true;
+    }
+
+    /**
+     * Forgets the record if the failed flow is the one recorded for its
+     * key; a newer flow claimed for the key since is left alone. Also
+     * releases the claim when the flow could not even be queued.
+     *
+     * @return true if a record was dropped
+     */
+    public boolean failed(Node node, Flow flow) {
+        Key key = keyOf(node, flow);
+        ConcurrentMap<Key, Record> records = nodes.get(node);
+        if (key == null || records == null) {
+            return false;
+        }
+        Record record = records.get(key);
+        return record != null && record.flow == flow && records.remove(key, record);
+    }
+
+    /**
+     * Forgets the flow once it has been taken off the switch, so the next
+     * packet for it installs it again.
+     */
+    public void removed(Node node, Flow flow) {
+        failed(node, flow);
+    }
+
+    /**
+     * Forgets the flow the switch reports gone on its own. The reported flow
+     * is the switch's copy, so it is matched by key and output rather than
+     * by identity; a flow pending for the key is left alone.
+     */
+    public void expired(Node node, Flow flow, long now) {
+        Key key = keyOf(node, flow);
+        ConcurrentMap<Key, Record> records = nodes.get(node);
+        if (key == null || records == null) {
+            return;
+        }
+        Record record = records.get(key);
+        if (record != null && record.flow != null && !record.isLive(now)
+                && record.outPort.equals(outputOf(flow))) {
+            records.remove(key, record);
+        }
+    }
+
+    private Record recordOf(Node node, Flow flow) {
+        Key key = keyOf(node, flow);
+        if (key == null) {
+            return null;
+        }
+        Record record = get(node, key);
+        return (record != null && record.flow == flow) ? record : null;
+    }
+
+    private Record get(Node node, Key key) {
+        ConcurrentMap<Key, Record> records = nodes.get(node);
+        return (records == null) ? null : records.get(key);
+    }
+
+    private ConcurrentMap<Key, Record> recordsFor(Node node) {
+        ConcurrentMap<Key, Record> records = nodes.get(node);
+        if (records == null) {
+            ConcurrentMap<Key, Record> created = new ConcurrentHashMap<Key, Record>();
+            records = nodes.putIfAbsent(node, created);
+            if (records == null) {
+                records = created;
+            }
+        }
+        return records;
+    }
+
+    public void removeNode(Node node) {
+        nodes.remove(node);
+    }
+
+    /**
+     * Drops records the switch has certainly forgotten by now: claims whose
+     * flow was never built, and flows quiet for longer than RETAIN.
+     */
+    public void expire(long now) {
+        for (ConcurrentMap<Key, Record> records : nodes.values()) {
+            Iterator<Record> it = records.values().iterator();
+            while (it.hasNext()) {
+                Record record = it.next();
+                if (!record.isLive(now)
+                        && (record.flow == null || now - record.expires >= RETAIN)) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (ConcurrentMap<Key, Record> records : nodes.values()) {
+            size += records.size();
+        }
+        return size;
+    }
+
+    /**
+     * Flows pending on, or possibly still installed on, the switch.
+     */
+    public int size(Node node) {
+        ConcurrentMap<Key, Record> records = nodes.get(node);
+        return (records == null) ? 0 : records.size();
+    }
+
+    public long getSuppressedCount() {
+        return suppressed.get();
+    }
+
+    /**
+     * Rebuilds the key from a flow built by the forwarding path. Flows that
+     * don't match on a destination MAC are not tracked here.
+     */
+    static Key keyOf(Node node, Flow flow) {
+        Match match = flow.getMatch();
+        if (match == null) {
+            return null;
+        }
+        MatchField dst = match.getField(MatchType.DL_DST);
+        if (dst == null) {
+            return null;
+        }
+        MatchField in = match.getField(MatchType.IN_PORT);
+        NodeConnector inPort = (in == null) ? null : (NodeConnector) in.getValue();
+        MatchField src = match.getField(MatchType.DL_SRC);
+        long srcMac = (src == null) ? -1L : toLong((byte[]) src.getValue());
+        return new Key(node, inPort, srcMac, toLong((byte[]) dst.getValue()));
+    }
+
+    private static long toLong(byte[] mac) {
+        long value = 0;
+        for (byte b : mac) {
+            value = (value << 8) | (b & 0xffL);
+        }
+        return value;
+    }
+
+    private static NodeConnector outputOf(Flow flow) {
+        if (flow.getActions() == null) {
+            return null;
+        }
+        for (Action action : flow.getActions()) {
+            if (action instanceof Output) {
+                return ((Output) action).getPort();
+            }
+        }
+        return null;
+    }
+
+    static final class Key {
+        final Node node;
+        final NodeConnector inPort;
+        final long srcMac;
+        final long dstMac;
+
+        Key(Node node, NodeConnector inPort, long srcMac, long dstMac) {
+            this.node = node;
+            this.inPort = inPort;
+            this.srcMac = srcMac;
+            this.dstMac = dstMac;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = node.hashCode();
+            result = 31 * result + ((inPort == null) ? 0 : inPort.hashCode());
+            result = 31 * result + (int) (srcMac ^ (srcMac >>> 32));
+            result = 31 * result + (int) (dstMac ^ (dstMac >>> 32));
+            return result;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return dstMac == other.dstMac && srcMac == other.srcMac && node.equals(other.node)
+                    && ((inPort == null) ? other.inPort == null : inPort.equals(other.inPort));
+        }
+    }
+
+    static final class Record {
+        final NodeConnector outPort;
+        volatile long expires;
+        volatile Flow flow;
+        volatile boolean reactive;
+
+        Record(NodeConnector outPort, long now) {
+            this.outPort = outPort;
+            this.expires = now + PENDING_TIMEOUT;
+        }
+
+        boolean isLive(long now) {
+            return now < expires;
+        }
+    }
+}
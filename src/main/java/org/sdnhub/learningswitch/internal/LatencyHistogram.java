@@ -0,0 +1,83 @@
+package org.sdnhub.learningswitch.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.sdnhub.learningswitch.LatencyStatistics;
+
+/**
+ * Fixed-bucket latency histogram. Bucket i counts samples up to
+ * 2^(i + 6) ns, i.e. 64ns up to about 2s in powers of two, with a final
+ * bucket for anything slower. Recording is one array increment.
+ */
+public final class LatencyHistogram {
+    private static final int MIN_SHIFT = 6;
+    static final int BUCKETS = 26;
+
+    private final String name;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS + 1);
+    private final StripedCounter total = new StripedCounter();
+
+    public LatencyHistogram(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void record(long nanos) {
+        counts.getAndIncrement(bucketOf(nanos));
+        total.add(nanos);
+    }
+
+    static int bucketOf(long nanos) {
+        if (nanos <= 0) {
+            return 0;
+        }
+        int bucket = 64 - Long.numberOfLeadingZeros((nanos - 1) >>> MIN_SHIFT);
+        return Math.min(bucket, BUCKETS);
+    }
+
+    /**
+     * Upper bound of the bucket in nanoseconds, Long.MAX_VALUE for the
+     * overflow bucket.
+     */
+    static long upperBound(int bucket) {
+        return (bucket >= BUCKETS) ? Long.MAX_VALUE : 1L << (bucket + MIN_SHIFT);
+    }
+
+    public LatencyStatistics snapshot() {
+        long[] snapshot = new long[BUCKETS + 1];
+        long count = 0;
+        for (int i = 0; i <= BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            count += snapshot[i];
+        }
+        List<Long> bounds = new ArrayList<Long>(BUCKETS + 1);
+        List<Long> buckets = new ArrayList<Long>(BUCKETS + 1);
+        for (int i = 0; i <= BUCKETS; i++) {
+            bounds.add(upperBound(i));
+            buckets.add(snapshot[i]);
+        }
+        long mean = (count == 0) ? 0 : total.sum() / count;
+        return new LatencyStatistics(name, count, mean, percentile(snapshot, count, 0.50),
+                percentile(snapshot, count, 0.99), bounds, buckets);
+    }
+
+    private static long percentile(long[] snapshot, long count, double quantile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(count * quantile);
+        long seen = 0;
+        for (int i = 0; i <= BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return upperBound(i);
+            }
+        }
+        return upperBound(BUCKETS);
+    }
+}
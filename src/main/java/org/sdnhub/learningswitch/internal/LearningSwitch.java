@@ -3,86 +3,601 @@ package org.sdnhub.learningswitch.internal;
 
 import org.sdnhub.learningswitch.ILearningSwitch;
 import org.sdnhub.learningswitch.LearningSwitchData;
+import org.sdnhub.learningswitch.LearningSwitchEvent;
+import org.sdnhub.learningswitch.LearningSwitchEvents;
+import org.sdnhub.learningswitch.LearningSwitchStatistics;
+import org.sdnhub.learningswitch.PacketTraces;
+import org.sdnhub.learningswitch.MacTableEntry;
+import org.sdnhub.learningswitch.MacTablePage;
+import org.sdnhub.learningswitch.MacTableStatistics;
+import org.sdnhub.learningswitch.PortDropStatistics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 import java.util.UUID;
 import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 import org.opendaylight.controller.sal.utils.Status;
 import org.opendaylight.controller.sal.utils.StatusCode;
 import org.opendaylight.controller.sal.action.Action;
+import org.opendaylight.controller.sal.action.Controller;
+import org.opendaylight.controller.sal.action.Flood;
 import org.opendaylight.controller.sal.action.Output;
 import org.opendaylight.controller.sal.core.ConstructionException;
+import org.opendaylight.controller.sal.core.Edge;
 import org.opendaylight.controller.sal.core.Node;
 import org.opendaylight.controller.sal.core.NodeConnector;
+import org.opendaylight.controller.sal.core.Property;
+import org.opendaylight.controller.sal.core.State;
+import org.opendaylight.controller.sal.core.UpdateType;
 import org.opendaylight.controller.sal.flowprogrammer.Flow;
+import org.opendaylight.controller.sal.flowprogrammer.IFlowProgrammerListener;
 import org.opendaylight.controller.sal.flowprogrammer.IFlowProgrammerService;
 import org.opendaylight.controller.sal.match.Match;
 import org.opendaylight.controller.sal.match.MatchField;
 import org.opendaylight.controller.sal.match.MatchType;
-import org.opendaylight.controller.sal.packet.BitBufferHelper;
-import org.opendaylight.controller.sal.packet.Ethernet;
 import org.opendaylight.controller.sal.packet.IDataPacketService;
 import org.opendaylight.controller.sal.packet.IListenDataPacket;
-import org.opendaylight.controller.sal.packet.IPv4;
-import org.opendaylight.controller.sal.packet.Packet;
 import org.opendaylight.controller.sal.packet.PacketResult;
 import org.opendaylight.controller.sal.packet.RawPacket;
-import org.opendaylight.controller.sal.packet.UDP;
-import org.opendaylight.controller.sal.utils.NetUtils;
+import org.opendaylight.controller.sal.topology.TopoEdgeUpdate;
+import org.opendaylight.controller.switchmanager.IInventoryListener;
 import org.opendaylight.controller.switchmanager.ISwitchManager;
+import org.opendaylight.controller.topologymanager.ITopologyManager;
+import org.opendaylight.controller.topologymanager.ITopologyManagerAware;
 
-public class LearningSwitch implements IListenDataPacket, ILearningSwitch {
-    private Map<UUID, LearningSwitchData> data;
+public class LearningSwitch implements IListenDataPacket, ILearningSwitch, IInventoryListener,
+        ITopologyManagerAware, IFlowProgrammerListener {
+    private ConcurrentNavigableMap<UUID, LearningSwitchData> data;
     protected static final Logger logger = LoggerFactory.getLogger(LearningSwitch.class);
+    private static final long MAC_TABLE_VIEW_TTL = 60000L;
+    private static final int MAX_MAC_TABLE_VIEWS = 4;
+    private static final long MAC_TABLE_VIEW_SHARE = 1000L;
+    private static final long HUB_FLOW_RETRY = 5000L;
 	private IDataPacketService dataPacketService = null;
 	private ISwitchManager switchManager = null;
 	private IFlowProgrammerService programmer = null;
-	private Map<Long, NodeConnector> mac_to_port = new HashMap<Long, NodeConnector>();
-	private String function = "hub";
+	private MacTable macTable;
+	private ScheduledExecutorService housekeeper;
+	private FlowInstaller flowInstaller;
+	private final FlowShadowTable flowShadow = new FlowShadowTable();
+	private ITopologyManager topologyManager = null;
+	private final BroadcastTree broadcastTree = new BroadcastTree();
+	private final UpPortCache upPorts = new UpPortCache(new UpPortCache.PortFilter() {
+		@Override
+		public boolean accept(NodeConnector port) {
+			return !broadcastTree.isBlocked(port);
+		}
+	});
+	private StormControl stormControl;
+	private EventRing<SwitchEvent> events;
+	private long eventLinger;
+	private AdmissionControl admission;
+	private FlapDamping flapDamping;
+	private AdaptiveIdleTimeout idleTimeouts;
+	private PacketTracer tracer;
+	private int flowBudget;
+	private PacketInDispatcher dispatcher;
+	private volatile String function = "hub";
+	private boolean proactive;
+	private int proactivePriority;
+	private short proactiveIdleTimeout;
+	private boolean hubFloodFlows;
+	private short hubPriority;
+	private Flow hubFloodFlow;
+	private Flow lldpPuntFlow;
+	// Hub flows currently programmed on each switch, LLDP punt excluded
+	private final ConcurrentMap<Node, List<Flow>> hubFlows =
+			new ConcurrentHashMap<Node, List<Flow>>();
+	// When relayed packets may next try a switch whose hub flows failed
+	private final ConcurrentMap<Node, Long> hubFlowRetry = new ConcurrentHashMap<Node, Long>();
+	private final LearningSwitchStats stats = new LearningSwitchStats();
+	// Seeded from the clock so versions (and the ETags built from them) are
+	// not reused across restarts
+	private final AtomicLong dataVersion = new AtomicLong(System.currentTimeMillis() << 16);
+	private File snapshotFile;
+	private final ConcurrentMap<Long, MacTableView> macTableViews =
+			new ConcurrentHashMap<Long, MacTableView>();
+	private final AtomicLong macTableViewIds = new AtomicLong();
+	private volatile StateSnapshot snapshot;
+	private ObjectName statsMBeanName;
 
 
     void init() {
         logger.info("Initializing Simple application");
-        data = new ConcurrentHashMap<UUID, LearningSwitchData>();
+        // Ordered so collection pages can resume after a key
+        data = new ConcurrentSkipListMap<UUID, LearningSwitchData>();
+        macTable = new MacTable(MacTable.DEFAULT_INITIAL_CAPACITY,
+                LearningSwitchConfig.getInt("mactable.maxEntries", MacTable.DEFAULT_MAX_ENTRIES),
+                LearningSwitchConfig.getLong("mactable.idleTimeout", MacTable.DEFAULT_IDLE_TIMEOUT / 1000) * 1000);
+        events = new EventRing<SwitchEvent>(
+                LearningSwitchConfig.getInt("events.capacity", EventRing.DEFAULT_CAPACITY));
+        eventLinger = LearningSwitchConfig.getLong("events.linger", 50);
+        macTable.setRemovalListener(new MacTable.RemovalListener() {
+            @Override
+            public void entryRemoved(Node node, long mac, NodeConnector port, boolean evicted) {
+                events.publish(SwitchEvent.mac(evicted ? SwitchEvent.EVICTED : SwitchEvent.AGED,
+                        mac, port, null));
+            }
+        });
+        stormControl = new StormControl(
+                LearningSwitchConfig.getLong("stormcontrol.portRate", StormControl.DEFAULT_PORT_RATE),
+                LearningSwitchConfig.getLong("stormcontrol.portBurst", 0),
+                LearningSwitchConfig.getLong("stormcontrol.nodeRate", StormControl.DEFAULT_NODE_RATE),
+                LearningSwitchConfig.getLong("stormcontrol.nodeBurst", 0),
+                LearningSwitchConfig.getLong("stormcontrol.sampleRate", 0));
+        flapDamping = new FlapDamping(
+                LearningSwitchConfig.getLong("damping.halfLife", FlapDamping.DEFAULT_HALF_LIFE / 1000) * 1000,
+                LearningSwitchConfig.getInt("damping.suppress", FlapDamping.DEFAULT_SUPPRESS),
+                LearningSwitchConfig.getInt("damping.reuse", FlapDamping.DEFAULT_REUSE));
+        idleTimeouts = new AdaptiveIdleTimeout(
+                LearningSwitchConfig.getInt("flow.idleTimeout.min", AdaptiveIdleTimeout.DEFAULT_MIN),
+                LearningSwitchConfig.getInt("flow.idleTimeout.max", AdaptiveIdleTimeout.DEFAULT_MAX));
+        // Per switch, 0 for no budget
+        flowBudget = LearningSwitchConfig.getInt("flow.maxEntries", 0);
+        tracer = new PacketTracer(LearningSwitchConfig.getInt("trace.sampleRate", 0),
+                LearningSwitchConfig.getLong("trace.slowThreshold", 0) * 1000,
+                LearningSwitchConfig.getInt("trace.capacity", PacketTracer.DEFAULT_CAPACITY));
+        proactive = LearningSwitchConfig.getBoolean("proactive.enabled", false);
+        proactivePriority = LearningSwitchConfig.getInt("proactive.priority", 10);
+        proactiveIdleTimeout = (short) LearningSwitchConfig.getInt("proactive.idleTimeout", 300);
+        admission = createAdmissionControl();
+        if (admission.isEnabled() && proactive) {
+            // Destination-only flows would forward unauthorized hosts too
+            logger.warn("Proactive mode is not supported with admission control, disabling it");
+            proactive = false;
+        }
+        if (admission.isEnabled()) {
+            // Hub flooding forwards every host without looking at it
+            logger.warn("Hub mode does not enforce admission control, starting in switch mode");
+            function = "switch";
+        }
+        hubFloodFlows = LearningSwitchConfig.getBoolean("hub.floodFlows", true);
+        hubPriority = (short) LearningSwitchConfig.getInt("hub.floodPriority", 1);
+        hubFloodFlow = new Flow(new Match(), Collections.<Action>singletonList(new Flood()));
+        hubFloodFlow.setPriority(hubPriority);
+        Match lldp = new Match();
+        lldp.setField(new MatchField(MatchType.DL_TYPE, (short) EthernetHeader.ETHERTYPE_LLDP));
+        lldpPuntFlow = new Flow(lldp, Collections.<Action>singletonList(new Controller()));
+        lldpPuntFlow.setPriority((short) (hubPriority + 1));
+        registerGauges();
+        restoreSnapshot();
     }
     void start() {
         logger.info("Simple application starting");
+        int workers = LearningSwitchConfig.getInt("packetin.workers", PacketInDispatcher.DEFAULT_WORKERS);
+        if (workers > 0) {
+            dispatcher = new PacketInDispatcher(workers,
+                    LearningSwitchConfig.getInt("packetin.queueSize", PacketInDispatcher.DEFAULT_QUEUE_SIZE),
+                    new PacketInDispatcher.Handler() {
+                        @Override
+                        public void handle(RawPacket packet) {
+                            processPacket(packet);
+                        }
+                    });
+            dispatcher.start();
+        }
+        flowInstaller = new FlowInstaller(programmer,
+                LearningSwitchConfig.getInt("flowprogrammer.workers", FlowInstaller.DEFAULT_WORKERS),
+                LearningSwitchConfig.getInt("flowprogrammer.maxPending", FlowInstaller.DEFAULT_MAX_PENDING),
+                LearningSwitchConfig.getInt("flowprogrammer.batchSize", FlowInstaller.DEFAULT_BATCH_SIZE),
+                new FlowInstaller.Listener() {
+                    @Override
+                    public void flowInstalled(Node node, Flow flow) {
+                        if (flowShadow.isReactive(node, flow)) {
+                            stats.flowInstalls.increment();
+                        }
+                        flowShadow.installed(node, flow, System.currentTimeMillis());
+                    }
+
+                    @Override
+                    public void flowRemoved(Node node, Flow flow) {
+                        flowShadow.removed(node, flow);
+                    }
+
+                    @Override
+                    public void flowFailed(Node node, Flow flow, boolean removal, Status status) {
+                        if (!removal && flowShadow.isReactive(node, flow)) {
+                            stats.flowInstallFailures.increment();
+                        }
+                        flowShadow.failed(node, flow);
+                        if (flow == lldpPuntFlow || isHubFlow(node, flow)) {
+                            // Let a relayed packet try again, but not every
+                            // one of them while the switch keeps refusing
+                            hubFlowRetry.put(node, System.currentTimeMillis() + HUB_FLOW_RETRY);
+                            hubFlows.remove(node);
+                        }
+                        logger.debug("SDN Plugin failed to program the flow: {}. The failure is: {}",
+                                flow, status.getDescription());
+                    }
+                });
+        flowInstaller.setDataPacketService(this.dataPacketService);
+        housekeeper = Executors.newSingleThreadScheduledExecutor();
+        housekeeper.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                macTable.expire();
+                flowShadow.expire(System.currentTimeMillis());
+                flapDamping.expire(System.currentTimeMillis());
+                idleTimeouts.expire(System.currentTimeMillis());
+            }
+        }, 10, 10, TimeUnit.SECONDS);
+        startSnapshots();
+        registerStatsMBean();
+        if (this.switchManager != null) {
+            for (Node node : this.switchManager.getNodes()) {
+                installHubFlows(node);
+            }
+        }
     }
 
     void stop() {
         logger.info("Simple application stopping");
+        unregisterStatsMBean();
+        if (dispatcher != null) {
+            dispatcher.stop();
+            dispatcher = null;
+        }
+        if (housekeeper != null) {
+            housekeeper.shutdownNow();
+            housekeeper = null;
+        }
+        if (snapshot != null) {
+            // Last write so a clean restart loses nothing
+            snapshot.write(macTable, data, dataVersion.get());
+            snapshot.close();
+            snapshot = null;
+        }
+        if (flowInstaller != null) {
+            flowInstaller.shutdown();
+            flowInstaller = null;
+        }
+    }
+	
+    /**
+     * Reloads the MAC table and data map saved by the previous run, so the
+     * network is not flooded until everything is relearned.
+     */
+    private void restoreSnapshot() {
+        // Set but empty turns snapshots off
+        String path = LearningSwitchConfig.getRaw("snapshot.file");
+        if (path == null) {
+            path = StateSnapshot.DEFAULT_FILE;
+        }
+        snapshotFile = path.isEmpty() ? null : new File(path);
+        if (snapshotFile == null) {
+            return;
+        }
+        try {
+            int restored = StateSnapshot.load(snapshotFile, macTable, data);
+            if (restored >= 0) {
+                logger.info("Restored {} MAC entries and {} data entries from {}",
+                        restored, data.size(), snapshotFile);
+            }
+        } catch (IOException e) {
+            logger.warn("Could not restore snapshot {}: {}", snapshotFile, e.getMessage());
+        }
+    }
+
+    private void startSnapshots() {
+        int interval = LearningSwitchConfig.getInt("snapshot.interval", StateSnapshot.DEFAULT_INTERVAL);
+        if (snapshotFile == null || interval <= 0) {
+            return;
+        }
+        final StateSnapshot created = new StateSnapshot(snapshotFile,
+                LearningSwitchConfig.getInt("snapshot.maxEntries", StateSnapshot.DEFAULT_MAX_ENTRIES));
+        try {
+            created.open();
+        } catch (IOException e) {
+            logger.warn("Could not open snapshot {}, learned state will not be saved", snapshotFile, e);
+            return;
+        }
+        snapshot = created;
+        housekeeper.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    created.write(macTable, data, dataVersion.get());
+                } catch (RuntimeException e) {
+                    logger.warn("Failed to write snapshot {}", snapshotFile, e);
+                }
+            }
+        }, interval, interval, TimeUnit.SECONDS);
+    }
+
+    private AdmissionControl createAdmissionControl() {
+        boolean enabled = LearningSwitchConfig.getBoolean("admission.enabled", false);
+        NodeConnector portalPort = null;
+        String port = LearningSwitchConfig.getString("admission.portalPort", null);
+        if (port != null) {
+            portalPort = NodeConnector.fromString(port);
+            if (portalPort == null) {
+                logger.warn("Invalid admission portal port {}, unauthorized traffic will be dropped",
+                        port);
+            }
+        }
+        long portalMac = -1L;
+        String mac = LearningSwitchConfig.getString("admission.portalMac", null);
+        if (mac != null) {
+            try {
+                portalMac = EthernetHeader.parseMAC(mac);
+            } catch (IllegalArgumentException e) {
+                logger.warn("Ignoring admission portal MAC: {}", e.getMessage());
+            }
+        }
+        return new AdmissionControl(enabled, portalPort, portalMac,
+                LearningSwitchConfig.getInt("admission.priority", AdmissionControl.DEFAULT_PRIORITY),
+                LearningSwitchConfig.getInt("admission.idleTimeout", AdmissionControl.DEFAULT_IDLE_TIMEOUT));
+    }
+
+    private void registerGauges() {
+        stats.addGauge("macTableEntries", new LearningSwitchStats.Gauge() {
+            @Override
+            public long value() {
+                return macTable.size();
+            }
+        });
+        stats.addGauge("macAged", new LearningSwitchStats.Gauge() {
+            @Override
+            public long value() {
+                return macTable.getAgedCount();
+            }
+        });
+        stats.addGauge("macEvicted", new LearningSwitchStats.Gauge() {
+            @Override
+            public long value() {
+                return macTable.getEvictedCount();
+            }
+        });
+        stats.addGauge("floodsDropped", new LearningSwitchStats.Gauge() {
+            @Override
+            public long value() {
+                return stormControl.getDroppedCount();
+            }
+        });
+        stats.addGauge("broadcastTreeBlockedPorts", new LearningSwitchStats.Gauge() {
+            @Override
+            public long value() {
+                return broadcastTree.getBlockedPortCount();
+            }
+        });
+        stats.addGauge("flowInstallsSuppressed", new LearningSwitchStats.Gauge() {
+            @Override
+            public long value() {
+                return flowShadow.getSuppressedCount();
+            }
+        });
+        stats.addGauge("flowInstallsCoalesced", new LearningSwitchStats.Gauge() {
+            @Override
+            public long value() {
+                FlowInstaller installer = flowInstaller;
+                return (installer == null) ? 0 : installer.getCoalescedCount();
+            }
+        });
+        stats.addGauge("flowInstallsRejected", new LearningSwitchStats.Gauge() {
+            @Override
+            public long value() {
+                FlowInstaller installer = flowInstaller;
+                return (installer == null) ? 0 : installer.getRejectedCount();
+            }
+        });
+        stats.addGauge("packetsReleased", new LearningSwitchStats.Gauge() {
+            @Override
+            public long value() {
+                FlowInstaller installer = flowInstaller;
+                return (installer == null) ? 0 : installer.getReleasedCount();
+            }
+        });
+        stats.addGauge("flowInstallsPending", new LearningSwitchStats.Gauge() {
+            @Override
+            public long value() {
+                FlowInstaller installer = flowInstaller;
+                return (installer == null) ? 0 : installer.getPendingCount();
+            }
+        });
+        stats.addGauge("admissionAuthorizedHosts", new LearningSwitchStats.Gauge() {
+            @Override
+            public long value() {
+                return admission.getAuthorizedCount();
+            }
+        });
+        stats.addGauge("admissionRedirects", new LearningSwitchStats.Gauge() {
+            @Override
+            public long value() {
+                return admission.getRedirectedCount();
+            }
+        });
+        stats.addGauge("admissionDrops", new LearningSwitchStats.Gauge() {
+            @Override
+            public long value() {
+                return admission.getDroppedCount();
+            }
+        });
+        stats.addGauge("flowIdleTimeoutMean", new LearningSwitchStats.Gauge() {
+            @Override
+            public long value() {
+                return idleTimeouts.getMeanTimeout();
+            }
+        });
+        stats.addGauge("macsDamped", new LearningSwitchStats.Gauge() {
+            @Override
+            public long value() {
+                return flapDamping.getSuppressedCount();
+            }
+        });
+        stats.addGauge("macDampings", new LearningSwitchStats.Gauge() {
+            @Override
+            public long value() {
+                return flapDamping.getDampedCount();
+            }
+        });
+        stats.addGauge("snapshotEntriesUnsaved", new LearningSwitchStats.Gauge() {
+            @Override
+            public long value() {
+                StateSnapshot current = snapshot;
+                return (current == null) ? 0 : current.getUnsavedEntries();
+            }
+        });
+        stats.addGauge("snapshotDataUnsaved", new LearningSwitchStats.Gauge() {
+            @Override
+            public long value() {
+                StateSnapshot current = snapshot;
+                return (current == null) ? 0 : current.getUnsavedData();
+            }
+        });
+        stats.addGauge("packetInsDropped", new LearningSwitchStats.Gauge() {
+            @Override
+            public long value() {
+                PacketInDispatcher packetDispatcher = dispatcher;
+                return (packetDispatcher == null) ? 0 : packetDispatcher.getDroppedCount();
+            }
+        });
+    }
+
+    private void registerStatsMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("org.sdnhub.learningswitch:type=LearningSwitchStats");
+            if (!server.isRegistered(name)) {
+                server.registerMBean(stats, name);
+                statsMBeanName = name;
+            }
+        } catch (JMException e) {
+            logger.warn("Could not register statistics MBean", e);
+        }
+    }
+
+    private void unregisterStatsMBean() {
+        if (statsMBeanName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(statsMBeanName);
+        } catch (JMException e) {
+            logger.debug("Could not unregister statistics MBean", e);
+        }
+        statsMBeanName = null;
     }
 	
 	void setDataPacketService(IDataPacketService s) {
 		this.dataPacketService = s;
+		if (this.flowInstaller != null) {
+			this.flowInstaller.setDataPacketService(s);
+		}
 	}
 
 	void unsetDataPacketService(IDataPacketService s) {
 		if (this.dataPacketService == s) {
 			this.dataPacketService = null;
+			if (this.flowInstaller != null) {
+				this.flowInstaller.setDataPacketService(null);
+			}
 		}
 	}
 
 	public void setFlowProgrammerService(IFlowProgrammerService s)
 	{
 		this.programmer = s;
+		if (this.flowInstaller != null) {
+			this.flowInstaller.setFlowProgrammerService(s);
+		}
 	}
 
 	public void unsetFlowProgrammerService(IFlowProgrammerService s) {
 		if (this.programmer == s) {
 			this.programmer = null;
+			if (this.flowInstaller != null) {
+				this.flowInstaller.setFlowProgrammerService(null);
+			}
 		}
 	}
 
 	
 	
+	void setTopologyManager(ITopologyManager t) {
+		logger.debug("TopologyManager set");
+		this.topologyManager = t;
+		Map<Edge, Set<Property>> edges = t.getEdges();
+		if (edges != null && broadcastTree.reset(edges.keySet())) {
+			upPorts.clear();
+			refreshHubFlows();
+		}
+	}
+
+	void unsetTopologyManager(ITopologyManager t) {
+		if (this.topologyManager == t) {
+			logger.debug("TopologyManager removed!");
+			this.topologyManager = null;
+			if (broadcastTree.reset(Collections.<Edge>emptySet())) {
+				upPorts.clear();
+				refreshHubFlows();
+			}
+		}
+	}
+
+	@Override
+	public void edgeUpdate(List<TopoEdgeUpdate> topoedgeupdateList) {
+		boolean changed = false;
+		for (TopoEdgeUpdate update : topoedgeupdateList) {
+			if (update.getUpdateType() == UpdateType.REMOVED) {
+				changed |= broadcastTree.removeEdge(update.getEdge());
+			} else {
+				changed |= broadcastTree.addEdge(update.getEdge());
+			}
+		}
+		if (changed) {
+			// Flood arrays are filtered through the tree, rebuild them lazily
+			upPorts.clear();
+			refreshHubFlows();
+		}
+	}
+
+	@Override
+	public void edgeOverUtilized(Edge edge) {
+	}
+
+	@Override
+	public void edgeUtilBackToNormal(Edge edge) {
+	}
+
+	/**
+	 * The switch dropped a flow, usually because it idled out; tells the
+	 * shadow table and the adaptive timeout when its flows really left the
+	 * switch.
+	 */
+	@Override
+	public void flowRemoved(Node node, Flow flow) {
+		long now = System.currentTimeMillis();
+		flowShadow.expired(node, flow, now);
+		AdaptiveIdleTimeout timeouts = this.idleTimeouts;
+		if (timeouts != null) {
+			timeouts.removed(node, flow, now);
+		}
+	}
+
+	@Override
+	public void flowErrorReported(Node node, long rid, Object err) {
+	}
+
 	void setSwitchManager(ISwitchManager s) {
 		logger.debug("SwitchManager set");
 		this.switchManager = s;
@@ -96,67 +611,353 @@ public class LearningSwitch implements IListenDataPacket, ILearningSwitch {
 	}
 
 	@Override
-	public String toggleSwitchHub() {
+	public synchronized String toggleSwitchHub() {
+		if (admission.isEnabled() && this.function.equals("switch")) {
+			logger.warn("Hub mode does not enforce admission control, staying in switch mode");
+			return this.function;
+		}
 		if (this.function.equals("hub")) {
 			this.function = "switch";
+			for (Node node : new ArrayList<Node>(hubFlows.keySet())) {
+				removeHubFlows(node);
+			}
 		} else {
 			this.function = "hub";
+			if (this.switchManager != null) {
+				for (Node node : this.switchManager.getNodes()) {
+					installHubFlows(node);
+				}
+			}
 		}
+		events.publish(SwitchEvent.mode(this.function));
 		return this.function;
 	}
 
+    /**
+     * Moves hub forwarding onto the switch: lowest-priority flows that
+     * flood, and one just above them that keeps sending LLDP to the
+     * controller so topology discovery is not flooded away. Packets relayed
+     * through floodPacket are only the fallback until these land.
+     *
+     * Called again whenever the broadcast tree or the switch's ports change,
+     * and only reprograms the switch if its flood flows differ.
+     */
+    private synchronized void installHubFlows(Node node) {
+        if (!hubFloodFlows || flowInstaller == null || !function.equals("hub")) {
+            return;
+        }
+        List<Flow> flows = buildHubFlows(node);
+        List<Flow> previous = hubFlows.put(node, flows);
+        if (previous == null) {
+            flowInstaller.submit(node, lldpPuntFlow);
+        } else if (previous.equals(flows)) {
+            return;
+        } else {
+            for (Flow flow : previous) {
+                flowInstaller.submitRemoval(node, flow);
+            }
+        }
+        for (Flow flow : flows) {
+            flowInstaller.submit(node, flow);
+        }
+    }
+
+    /**
+     * First install from the packet-in path, for a switch that has no hub
+     * flows yet. Claims the switch with putIfAbsent instead of taking the
+     * monitor, so dispatcher workers relaying floods never wait on each
+     * other, and backs off after a failure.
+     */
+    private void claimHubFlows(Node node) {
+        if (!hubFloodFlows || flowInstaller == null) {
+            return;
+        }
+        Long retry = hubFlowRetry.get(node);
+        if (retry != null) {
+            if (System.currentTimeMillis() < retry) {
+                return;
+            }
+            hubFlowRetry.remove(node, retry);
+        }
+        List<Flow> flows = buildHubFlows(node);
+        if (hubFlows.putIfAbsent(node, flows) != null) {
+            return;
+        }
+        flowInstaller.submit(node, lldpPuntFlow);
+        for (Flow flow : flows) {
+            flowInstaller.submit(node, flow);
+        }
+        if (!function.equals("hub")) {
+            // Switched back while claiming, take them off again
+            removeHubFlows(node);
+        }
+    }
+
+    /**
+     * A single wildcard FLOOD flow while none of the switch's ports is
+     * blocked by the broadcast tree. FLOOD would also use blocked ports, so
+     * otherwise each forwarding port gets a flow sending its packets out of
+     * the other forwarding ports, and each blocked port one that drops
+     * them.
+     */
+    private List<Flow> buildHubFlows(Node node) {
+        if (!broadcastTree.hasBlockedPort(node)) {
+            return Collections.singletonList(hubFloodFlow);
+        }
+        NodeConnector[] forwarding = upPorts.get(node, this.switchManager);
+        List<Flow> flows = new ArrayList<Flow>();
+        for (NodeConnector in : forwarding) {
+            List<Action> actions = new ArrayList<Action>(forwarding.length - 1);
+            for (NodeConnector out : forwarding) {
+                if (!out.equals(in)) {
+                    actions.add(new Output(out));
+                }
+            }
+            flows.add(hubPortFlow(in, actions));
+        }
+        for (NodeConnector blocked : broadcastTree.getBlockedPorts(node)) {
+            flows.add(hubPortFlow(blocked, Collections.<Action>emptyList()));
+        }
+        return flows;
+    }
+
+    private Flow hubPortFlow(NodeConnector in, List<Action> actions) {
+        Match match = new Match();
+        match.setField(new MatchField(MatchType.IN_PORT, in));
+        Flow flow = new Flow(match, actions);
+        flow.setPriority(hubPriority);
+        return flow;
+    }
+
+    private boolean isHubFlow(Node node, Flow flow) {
+        List<Flow> flows = hubFlows.get(node);
+        if (flows != null) {
+            for (Flow f : flows) {
+                if (f == flow) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Brings every switch's hub flows in line with the current broadcast
+     * tree and up ports.
+     */
+    private void refreshHubFlows() {
+        for (Node node : new ArrayList<Node>(hubFlows.keySet())) {
+            installHubFlows(node);
+        }
+    }
+
+    private synchronized void removeHubFlows(Node node) {
+        List<Flow> flows = hubFlows.remove(node);
+        if (flows != null && flowInstaller != null) {
+            for (Flow flow : flows) {
+                flowInstaller.submitRemoval(node, flow);
+            }
+            flowInstaller.submitRemoval(node, lldpPuntFlow);
+        }
+    }
+
 	private void floodPacket(RawPacket inPkt) {
         NodeConnector incoming_connector = inPkt.getIncomingNodeConnector();
         Node incoming_node = incoming_connector.getNode();
-        
-        logger.warn("Nodeconnector toString: {}", incoming_connector.hashCode());
-        logger.warn("Node toString: {}", incoming_node.hashCode());
-        
 
+        // Broadcast and unknown unicast both end up here, rate limit them
+        // before fanning out copies
+        if (!stormControl.admitFlood(incoming_connector)) {
+            return;
+        }
 
-        Set<NodeConnector> nodeConnectors =
-                this.switchManager.getUpNodeConnectors(incoming_node);
+        NodeConnector[] nodeConnectors = upPorts.get(incoming_node, this.switchManager);
 
         for (NodeConnector p : nodeConnectors) {
-            if (!p.equals(incoming_connector)) {
-                try {
-                    RawPacket destPkt = new RawPacket(inPkt);
-                    destPkt.setOutgoingNodeConnector(p);
-                    this.dataPacketService.transmitDataPacket(destPkt);
-                } catch (ConstructionException e2) {
-                    continue;
-                }
+            if (p.equals(incoming_connector)) {
+                continue;
+            }
+            // A copy that fails only costs its own port
+            try {
+                RawPacket destPkt = new RawPacket(inPkt);
+                destPkt.setOutgoingNodeConnector(p);
+                this.dataPacketService.transmitDataPacket(destPkt);
+            } catch (ConstructionException e) {
+                logger.debug("Failed to copy packet for flooding on {}", p, e);
             }
         }
     }
 
+    private void sendPacket(RawPacket inPkt, NodeConnector outgoing_connector) {
+        RawPacket destPkt = addressPacket(inPkt, outgoing_connector);
+        if (destPkt != null) {
+            this.dataPacketService.transmitDataPacket(destPkt);
+        }
+    }
 
+    /**
+     * Copies the packet for sending out of outgoing_connector, or returns
+     * null if it would go back out of the port it came in on.
+     */
+    private RawPacket addressPacket(RawPacket inPkt, NodeConnector outgoing_connector) {
+        if (outgoing_connector.equals(inPkt.getIncomingNodeConnector())) {
+            return null;
+        }
+        try {
+            RawPacket destPkt = new RawPacket(inPkt);
+            destPkt.setOutgoingNodeConnector(outgoing_connector);
+            return destPkt;
+        } catch (ConstructionException e) {
+            logger.debug("Failed to copy packet for {}", outgoing_connector, e);
+            return null;
+        }
+    }
+
+	@Override
+	public void notifyNode(Node node, UpdateType type, Map<String, Property> propMap) {
+		if (type != UpdateType.REMOVED) {
+			installHubFlows(node);
+		} else {
+			hubFlows.remove(node);
+			hubFlowRetry.remove(node);
+			upPorts.removeNode(node);
+			macTable.removeNode(node);
+			flowShadow.removeNode(node);
+			stormControl.removeNode(node);
+			flapDamping.removeNode(node);
+			idleTimeouts.removeNode(node);
+			if (flowInstaller != null) {
+				flowInstaller.removeNode(node);
+			}
+		}
+	}
+
+	@Override
+	public void notifyNodeConnector(NodeConnector nodeConnector, UpdateType type,
+			Map<String, Property> propMap) {
+		Property state = (propMap == null) ? null : propMap.get(State.StatePropName);
+		if (type == UpdateType.REMOVED
+				|| (state instanceof State && ((State) state).getValue() != State.EDGE_UP)) {
+			upPorts.portDown(nodeConnector);
+		} else {
+			upPorts.refresh(nodeConnector.getNode(), this.switchManager);
+		}
+		if (hubFlows.containsKey(nodeConnector.getNode())) {
+			installHubFlows(nodeConnector.getNode());
+		}
+	}
 
     @Override
     public PacketResult receiveDataPacket(RawPacket inPkt) {
         if (inPkt == null) {
             return PacketResult.IGNORED;
         }
+        stats.packetIns.increment();
+
+        // With worker threads configured, hand the packet to its switch's
+        // worker and return to the SAL straight away
+        PacketInDispatcher packetDispatcher = this.dispatcher;
+        if (packetDispatcher != null) {
+            return packetDispatcher.dispatch(inPkt) ? PacketResult.CONSUME : PacketResult.IGNORED;
+        }
+        return processPacket(inPkt);
+    }
+
+    private PacketResult processPacket(RawPacket inPkt) {
+        long startTime = System.nanoTime();
+        PacketTracer.Trace trace = tracer.sample(startTime);
+        PacketResult result = forwardPacket(inPkt, startTime, trace);
+        long endTime = System.nanoTime();
+        stats.packetInLatency.record(endTime - startTime);
+        if (trace != null) {
+            tracer.finish(trace, inPkt.getIncomingNodeConnector(), result.toString(), endTime);
+        }
+        return result;
+    }
 
+    /**
+     * @param trace
+     *            stamped as each stage finishes, null if the packet-in is
+     *            not sampled
+     */
+    private PacketResult forwardPacket(RawPacket inPkt, long startTime, PacketTracer.Trace trace) {
         NodeConnector incoming_connector = inPkt.getIncomingNodeConnector();
 
+        // Anything arriving over a link outside the broadcast tree is a copy
+        // that already reached this switch along the tree
+        if (broadcastTree.isBlocked(incoming_connector)) {
+            return PacketResult.CONSUME;
+        }
+
         // Hub implementation
         if (function.equals("hub")) {
+            stats.hubFloods.increment();
+            if (hubFloodFlows && !hubFlows.containsKey(incoming_connector.getNode())) {
+                claimHubFlows(incoming_connector.getNode());
+            }
             floodPacket(inPkt);
+            if (trace != null) {
+                trace.mark(PacketTracer.FLOOD);
+            }
         } else {
-            Packet formattedPak = this.dataPacketService.decodeDataPacket(inPkt);
-            if (!(formattedPak instanceof Ethernet)) {
+            // Only the Ethernet header is needed to learn and forward, read it
+            // in place rather than decoding the whole packet
+            byte[] frame = inPkt.getPacketData();
+            if (!EthernetHeader.isValid(frame)
+                    || EthernetHeader.getEtherType(frame) == EthernetHeader.ETHERTYPE_LLDP) {
                 return PacketResult.IGNORED;
             }
+            long srcMAC_val = EthernetHeader.getSourceMAC(frame);
+            long dstMAC_val = EthernetHeader.getDestinationMAC(frame);
+            stats.decodeLatency.record(System.nanoTime() - startTime);
+            if (trace != null) {
+                trace.addresses(srcMAC_val, dstMAC_val);
+                trace.mark(PacketTracer.DECODE);
+            }
 
-            learnSourceMAC(formattedPak, incoming_connector);
+            learnSourceMAC(srcMAC_val, incoming_connector);
+            if (trace != null) {
+                trace.mark(PacketTracer.LEARN);
+            }
+            // Unauthorized hosts are still learned so the portal's replies
+            // reach them, but their own traffic goes to the portal
+            if (!admission.admits(srcMAC_val, dstMAC_val)) {
+                admission.redirect(inPkt, this.dataPacketService);
+                if (trace != null) {
+                    trace.mark(PacketTracer.REDIRECT);
+                }
+                return PacketResult.CONSUME;
+            }
+            if (trace != null) {
+                trace.mark(PacketTracer.ADMIT);
+            }
             NodeConnector outgoing_connector = 
-                knowDestinationMAC(formattedPak);
+                knowDestinationMAC(dstMAC_val, incoming_connector.getNode());
+            if (trace != null) {
+                trace.mark(PacketTracer.LOOKUP);
+            }
             if (outgoing_connector == null) {
+                stats.unknownUnicastFloods.increment();
                 floodPacket(inPkt);
+                if (trace != null) {
+                    trace.mark(PacketTracer.FLOOD);
+                }
+            } else if (flapDamping.isSuppressed(incoming_connector.getNode(), dstMAC_val,
+                    System.currentTimeMillis())) {
+                // Its port is not stable enough to program, relay the
+                // packet to wherever it was seen last
+                stats.dampedForwards.increment();
+                sendPacket(inPkt, outgoing_connector);
+                if (trace != null) {
+                    trace.mark(PacketTracer.RELAY);
+                }
             } else {
-                if (!programFlow(formattedPak, incoming_connector,
-                            outgoing_connector)) {
+                boolean programmed = programFlow(inPkt, srcMAC_val, dstMAC_val,
+                        incoming_connector, outgoing_connector);
+                if (trace != null) {
+                    trace.mark(PacketTracer.PROGRAM);
+                }
+                if (!programmed) {
                     return PacketResult.IGNORED;
                 }
             }
@@ -164,44 +965,155 @@ public class LearningSwitch implements IListenDataPacket, ILearningSwitch {
         return PacketResult.CONSUME;
     }
 
-    private void learnSourceMAC(Packet formattedPak, NodeConnector incoming_connector) {
-        byte[] srcMAC = ((Ethernet)formattedPak).getSourceMACAddress();
-        long srcMAC_val = BitBufferHelper.toNumber(srcMAC);
-        this.mac_to_port.put(srcMAC_val, incoming_connector);
+    private void learnSourceMAC(long srcMAC_val, NodeConnector incoming_connector) {
+        NodeConnector previous = this.macTable.put(incoming_connector, srcMAC_val);
+        if (previous == null) {
+            stats.macLearns.increment();
+            events.publish(SwitchEvent.mac(SwitchEvent.LEARNED, srcMAC_val, incoming_connector, null));
+        } else if (!previous.equals(incoming_connector)) {
+            stats.macMoves.increment();
+            events.publish(SwitchEvent.mac(SwitchEvent.MOVED, srcMAC_val, incoming_connector, previous));
+            if (hostMoved(srcMAC_val, previous, incoming_connector)) {
+                return;
+            }
+        } else {
+            return;
+        }
+        // Whoever talks to this host next is forwarded by the switch, from
+        // any ingress port
+        if (proactive && !EthernetHeader.isGroupMAC(srcMAC_val)) {
+            installFlow(incoming_connector.getNode(), null, -1L, srcMAC_val, incoming_connector,
+                    proactivePriority, proactiveIdleTimeout, null);
+        }
+    }
+
+    /**
+     * Takes the flows forwarding to the host's old port off the switch, so
+     * traffic is not blackholed until they idle out, and moves its allow
+     * flows along.
+     *
+     * @return true if the host is flapping and nothing more should be
+     *         programmed towards it for now
+     */
+    private boolean hostMoved(long mac, NodeConnector from, NodeConnector to) {
+        Node node = to.getNode();
+        long now = System.currentTimeMillis();
+        // A host already being damped had nothing programmed towards it
+        // since, so there is nothing to take back
+        boolean damped = flapDamping.isSuppressed(node, mac, now);
+        boolean suppressed = flapDamping.moved(node, mac, now);
+        if (flowInstaller == null || damped) {
+            return suppressed;
+        }
+        // Only flows the shadow table knows may still be on the switch are
+        // removed, not every match a flow towards the host could have had
+        for (Flow flow : flowShadow.invalidate(node, mac, from)) {
+            idleTimeouts.invalidated(node, flow);
+            if (flowInstaller.submitRemoval(node, flow)) {
+                stats.flowInvalidations.increment();
+            }
+        }
+        if (!suppressed) {
+            admission.relocate(mac, from, to, macTable, flowInstaller);
+        }
+        return suppressed;
     }
 
-    private NodeConnector knowDestinationMAC(Packet formattedPak) {
-        byte[] dstMAC = ((Ethernet)formattedPak).getDestinationMACAddress();
-        long dstMAC_val = BitBufferHelper.toNumber(dstMAC);
-        return this.mac_to_port.get(dstMAC_val) ;
+    private NodeConnector knowDestinationMAC(long dstMAC_val, Node incoming_node) {
+        return this.macTable.get(incoming_node, dstMAC_val);
     }
 
-    private boolean programFlow(Packet formattedPak, 
+    private boolean programFlow(RawPacket inPkt, long srcMAC_val, long dstMAC_val, 
             NodeConnector incoming_connector, 
             NodeConnector outgoing_connector) {
-        byte[] dstMAC = ((Ethernet)formattedPak).getDestinationMACAddress();
+        Node incoming_node = incoming_connector.getNode();
+        if (proactive) {
+            // The destination flow was either never installed or has idled
+            // out, put it back rather than adding a per-ingress-port flow
+            return installFlow(incoming_node, null, -1L, dstMAC_val, outgoing_connector,
+                    proactivePriority, proactiveIdleTimeout, inPkt);
+        }
+        // Only the admitted host may use its flow, other hosts sharing the
+        // port still have to come through the controller
+        return installFlow(incoming_node, incoming_connector,
+                admission.isEnabled() ? srcMAC_val : -1L, dstMAC_val, outgoing_connector,
+                -1, (short) -1, inPkt);
+    }
 
+    /**
+     * Queues a flow forwarding dstMAC_val to outgoing_connector on the node.
+     *
+     * @param incoming_connector
+     *            ingress port to match on, or null for a destination-only flow
+     * @param srcMAC_val
+     *            source MAC to match on, or -1 to leave it wildcarded
+     * @param priority
+     *            flow priority, negative to keep the default
+     * @param idleTimeout
+     *            idle timeout in seconds, negative to pick one from how
+     *            often the destination has needed a flow
+     * @param inPkt
+     *            packet that triggered the flow, sent on to
+     *            outgoing_connector once the flow is in place; may be null
+     */
+    private boolean installFlow(Node node, NodeConnector incoming_connector, long srcMAC_val,
+            long dstMAC_val, NodeConnector outgoing_connector, int priority, short idleTimeout,
+            RawPacket inPkt) {
+        RawPacket destPkt = (inPkt == null) ? null : addressPacket(inPkt, outgoing_connector);
+        // Packets still in flight behind the first one of a burst would
+        // otherwise each program the same flow again
+        if (!flowShadow.begin(node, incoming_connector, srcMAC_val, dstMAC_val,
+                outgoing_connector, System.currentTimeMillis())) {
+            if (destPkt != null) {
+                // Queue behind the flow if it is still being programmed so
+                // the burst stays in order, otherwise just send it
+                Flow pending = flowShadow.flowFor(node, incoming_connector, srcMAC_val,
+                        dstMAC_val);
+                if (pending == null || !flowInstaller.release(node, pending, destPkt)) {
+                    this.dataPacketService.transmitDataPacket(destPkt);
+                }
+            }
+            return true;
+        }
+        if (idleTimeout < 0) {
+            idleTimeout = idleTimeouts.next(node, incoming_connector, srcMAC_val, dstMAC_val,
+                    System.currentTimeMillis(), flowBudget > 0 && flowShadow.size(node) > flowBudget);
+        }
+        Flow f = forwardingFlow(incoming_connector, srcMAC_val, dstMAC_val, outgoing_connector,
+                priority, idleTimeout);
+
+        // Hand the flow to the node's install queue, the packet-in thread
+        // never waits on the switch
+        flowShadow.submitted(node, incoming_connector, srcMAC_val, dstMAC_val, f, inPkt != null);
+        boolean queued = (destPkt == null) ? flowInstaller.submit(node, f)
+                : flowInstaller.submit(node, f, destPkt);
+        if (!queued) {
+            flowShadow.failed(node, f);
+            return false;
+        }
+        return true;
+    }
+
+    private static Flow forwardingFlow(NodeConnector incoming_connector, long srcMAC_val,
+            long dstMAC_val, NodeConnector outgoing_connector, int priority, short idleTimeout) {
         Match match = new Match();
-        match.setField( new MatchField(MatchType.IN_PORT, incoming_connector) );
-        match.setField( new MatchField(MatchType.DL_DST, dstMAC.clone()) );
+        if (incoming_connector != null) {
+            match.setField( new MatchField(MatchType.IN_PORT, incoming_connector) );
+        }
+        if (srcMAC_val >= 0) {
+            match.setField( new MatchField(MatchType.DL_SRC, EthernetHeader.toBytes(srcMAC_val)) );
+        }
+        match.setField( new MatchField(MatchType.DL_DST, EthernetHeader.toBytes(dstMAC_val)) );
 
         List<Action> actions = new ArrayList<Action>();
         actions.add(new Output(outgoing_connector));
 
         Flow f = new Flow(match, actions);
-        f.setIdleTimeout((short)5);
-
-        // Modify the flow on the network node
-        Node incoming_node = incoming_connector.getNode();
-        Status status = programmer.addFlow(incoming_node, f);
-
-        if (!status.isSuccess()) {
-            logger.warn("SDN Plugin failed to program the flow: {}. The failure is: {}",
-                    f, status.getDescription());
-            return false;
-        } else {
-            return true;
+        f.setIdleTimeout(idleTimeout);
+        if (priority >= 0) {
+            f.setPriority((short) priority);
         }
+        return f;
     }
   
      @Override
@@ -209,6 +1121,7 @@ public class LearningSwitch implements IListenDataPacket, ILearningSwitch {
         UUID uuid = UUID.randomUUID();
         LearningSwitchData sData = new LearningSwitchData(uuid.toString(), datum.getFoo(), datum.getBar());
         data.put(uuid, sData);
+        dataVersion.incrementAndGet();
         return uuid;
     }
     @Override
@@ -220,19 +1133,268 @@ public class LearningSwitch implements IListenDataPacket, ILearningSwitch {
         return data;
     }
     @Override
+    public Map<UUID, LearningSwitchData> readDataAfter(UUID cursor) {
+        return (cursor == null) ? data : data.tailMap(cursor, false);
+    }
+    @Override
+    public long getDataVersion() {
+        return dataVersion.get();
+    }
+    @Override
     public Status updateData(UUID uuid, LearningSwitchData datum) {
         data.put(uuid, datum);
+        dataVersion.incrementAndGet();
         return new Status(StatusCode.SUCCESS);
     }
     @Override
     public Status deleteData(UUID uuid) {
-        data.remove(uuid);
+        if (data.remove(uuid) != null) {
+            dataVersion.incrementAndGet();
+        }
         return new Status(StatusCode.SUCCESS);
     }
     
+    /**
+     * Creates every entry, in order. The data version moves once for the
+     * whole batch.
+     *
+     * @return the new uuids in the order of the entries, null for a null entry
+     */
+    @Override
+    public List<UUID> createData(List<LearningSwitchData> datums) {
+        List<UUID> uuids = new ArrayList<UUID>(datums.size());
+        for (LearningSwitchData datum : datums) {
+            if (datum == null) {
+                uuids.add(null);
+                continue;
+            }
+            UUID uuid = UUID.randomUUID();
+            data.put(uuid, new LearningSwitchData(uuid.toString(), datum.getFoo(), datum.getBar()));
+            uuids.add(uuid);
+        }
+        if (!datums.isEmpty()) {
+            dataVersion.incrementAndGet();
+        }
+        return uuids;
+    }
+    /**
+     * @return one status per entry, in the map's iteration order
+     */
+    @Override
+    public List<Status> updateData(Map<UUID, LearningSwitchData> datums) {
+        List<Status> statuses = new ArrayList<Status>(datums.size());
+        for (Map.Entry<UUID, LearningSwitchData> entry : datums.entrySet()) {
+            if (entry.getKey() == null || entry.getValue() == null) {
+                statuses.add(new Status(StatusCode.BADREQUEST, "Missing uuid or data"));
+                continue;
+            }
+            data.put(entry.getKey(), entry.getValue());
+            statuses.add(new Status(StatusCode.SUCCESS));
+        }
+        if (!datums.isEmpty()) {
+            dataVersion.incrementAndGet();
+        }
+        return statuses;
+    }
+    @Override
+    public List<Status> deleteData(List<UUID> uuids) {
+        List<Status> statuses = new ArrayList<Status>(uuids.size());
+        boolean changed = false;
+        for (UUID uuid : uuids) {
+            if (uuid == null) {
+                statuses.add(new Status(StatusCode.BADREQUEST, "Missing uuid"));
+                continue;
+            }
+            changed |= data.remove(uuid) != null;
+            statuses.add(new Status(StatusCode.SUCCESS));
+        }
+        if (changed) {
+            dataVersion.incrementAndGet();
+        }
+        return statuses;
+    }
+    
 	@Override
 	public String echo(String echo){
 		return "Hi " + echo + " from the class";
 	}
+
+	@Override
+	public List<PortDropStatistics> getFloodDropStatistics() {
+		return stormControl.getDropStatistics();
+	}
+
+	@Override
+	public Status authorizeHost(String mac) {
+		long value;
+		try {
+			value = EthernetHeader.parseMAC(mac);
+		} catch (IllegalArgumentException e) {
+			return new Status(StatusCode.BADREQUEST, e.getMessage());
+		}
+		if (!admission.authorize(value, macTable, flowInstaller)) {
+			return new Status(StatusCode.CONFLICT, "Host " + mac + " is already authorized");
+		}
+		return new Status(StatusCode.SUCCESS);
+	}
+
+	@Override
+	public Status revokeHost(String mac) {
+		long value;
+		try {
+			value = EthernetHeader.parseMAC(mac);
+		} catch (IllegalArgumentException e) {
+			return new Status(StatusCode.BADREQUEST, e.getMessage());
+		}
+		if (!admission.revoke(value, macTable, flowInstaller)) {
+			return new Status(StatusCode.NOTFOUND, "Host " + mac + " is not authorized");
+		}
+		return new Status(StatusCode.SUCCESS);
+	}
+
+	@Override
+	public List<String> getAuthorizedHosts() {
+		long[] macs = admission.getAuthorized();
+		List<String> hosts = new ArrayList<String>(macs.length);
+		for (long mac : macs) {
+			hosts.add(EthernetHeader.formatMAC(mac));
+		}
+		return hosts;
+	}
+
+	@Override
+	public LearningSwitchStatistics getStatistics() {
+		return stats.toStatistics();
+	}
+
+	@Override
+	public PacketTraces getPacketTraces(int max) {
+		return tracer.getTraces(max);
+	}
+
+    /**
+     * Long-polls the event ring: returns as soon as there are events at or
+     * after the cursor, or empty once the timeout passes.
+     *
+     * @param cursor
+     *            next sequence wanted, as returned by the previous call;
+     *            negative to only see events from now on
+     */
+	@Override
+	public LearningSwitchEvents getEvents(long cursor, long timeoutMillis, int maxEvents) {
+		EventRing.Batch<SwitchEvent> batch;
+		try {
+			batch = events.poll(cursor, maxEvents, timeoutMillis, eventLinger);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			batch = events.read(cursor, maxEvents);
+		}
+		List<LearningSwitchEvent> list = new ArrayList<LearningSwitchEvent>(batch.events.size());
+		for (SwitchEvent event : batch.events) {
+			list.add(event.toEvent());
+		}
+		return new LearningSwitchEvents(list, batch.next, batch.missed);
+	}
+
+    /**
+     * Pages through a point-in-time view of the MAC table. Snapshot 0 takes
+     * a new view; later pages pass the returned snapshot id to keep reading
+     * the same view.
+     *
+     * @return the page, or null if the snapshot has expired
+     * @throws IllegalArgumentException
+     *             if the node or node connector does not parse
+     */
+	@Override
+	public MacTablePage getMacTableEntries(long snapshot, String node, String nodeConnector,
+			int cursor, int limit) {
+		Node filterNode = null;
+		if (node != null && !node.isEmpty()) {
+			filterNode = Node.fromString(node);
+			if (filterNode == null) {
+				throw new IllegalArgumentException("Invalid node " + node);
+			}
+		}
+		NodeConnector filterPort = null;
+		if (nodeConnector != null && !nodeConnector.isEmpty()) {
+			filterPort = NodeConnector.fromString(nodeConnector);
+			if (filterPort == null) {
+				throw new IllegalArgumentException("Invalid node connector " + nodeConnector);
+			}
+		}
+		MacTableView view;
+		if (snapshot == 0) {
+			view = newMacTableView(System.currentTimeMillis());
+		} else {
+			expireMacTableViews(System.currentTimeMillis());
+			view = macTableViews.get(snapshot);
+			if (view == null) {
+				return null;
+			}
+		}
+		return view.page(filterNode, filterPort, cursor, limit);
+	}
+
+	/**
+	 * Takes a view for a first page. Clients starting within a second of
+	 * each other share one, so a burst of pollers does not push out the
+	 * views others are still paging through.
+	 */
+	private MacTableView newMacTableView(long now) {
+		synchronized (macTableViews) {
+			expireMacTableViews(now);
+			MacTableView latest = null;
+			for (MacTableView view : macTableViews.values()) {
+				if (latest == null || view.getTakenAt() > latest.getTakenAt()) {
+					latest = view;
+				}
+			}
+			if (latest != null && now - latest.getTakenAt() < MAC_TABLE_VIEW_SHARE) {
+				return latest;
+			}
+			// Views of a big table are big, make room by dropping the one read
+			// least recently
+			while (macTableViews.size() >= MAX_MAC_TABLE_VIEWS) {
+				MacTableView idlest = null;
+				for (MacTableView view : macTableViews.values()) {
+					if (idlest == null || view.getLastAccess() < idlest.getLastAccess()) {
+						idlest = view;
+					}
+				}
+				macTableViews.remove(idlest.getId());
+			}
+			MacTableView view = new MacTableView(macTableViewIds.incrementAndGet(), macTable.snapshot());
+			macTableViews.put(view.getId(), view);
+			return view;
+		}
+	}
+
+	private void expireMacTableViews(long now) {
+		long oldest = now - MAC_TABLE_VIEW_TTL;
+		for (MacTableView view : macTableViews.values()) {
+			if (view.getLastAccess() < oldest) {
+				macTableViews.remove(view.getId());
+			}
+		}
+	}
+
+	@Override
+	public List<MacTableEntry> lookupMac(String mac) {
+		final List<MacTableEntry> entries = new ArrayList<MacTableEntry>();
+		macTable.lookup(EthernetHeader.parseMAC(mac), new MacTable.Visitor() {
+			@Override
+			public void visit(Node node, long value, NodeConnector port, long lastSeen) {
+				entries.add(new MacTableEntry(EthernetHeader.formatMAC(value), node.toString(),
+						port.toString(), lastSeen));
+			}
+		});
+		return entries;
+	}
+
+	@Override
+	public MacTableStatistics getMacTableStatistics() {
+		return new MacTableStatistics(macTable.size(), macTable.getAgedCount(),
+				macTable.getEvictedCount());
+	}
 	
 }
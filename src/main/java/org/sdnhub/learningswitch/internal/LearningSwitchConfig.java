@@ -0,0 +1,53 @@
+package org.sdnhub.learningswitch.internal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Tunables for the learning switch, read from the controller's framework
+ * properties (config.ini). Every key is prefixed with "learningswitch.".
+ */
+public final class LearningSwitchConfig {
+    protected static final Logger logger = LoggerFactory.getLogger(LearningSwitchConfig.class);
+    private static final String PREFIX = "learningswitch.";
+
+    private LearningSwitchConfig() {
+    }
+
+    /**
+     * The value as set, trimmed, or null if it is not set at all. Unlike
+     * {@link #getString} an empty value is returned as is, for keys where
+     * empty means "off".
+     */
+    public static String getRaw(String key) {
+        String value = System.getProperty(PREFIX + key);
+        return (value == null) ? null : value.trim();
+    }
+
+    public static String getString(String key, String defaultValue) {
+        String value = System.getProperty(PREFIX + key);
+        return (value == null || value.trim().isEmpty()) ? defaultValue : value.trim();
+    }
+
+    public static int getInt(String key, int defaultValue) {
+        return (int) getLong(key, defaultValue);
+    }
+
+    public static long getLong(String key, long defaultValue) {
+        String value = getString(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            logger.warn("Ignoring invalid value {} for {}{}", value, PREFIX, key);
+            return defaultValue;
+        }
+    }
+
+    public static boolean getBoolean(String key, boolean defaultValue) {
+        String value = getString(key, null);
+        return (value == null) ? defaultValue : Boolean.parseBoolean(value);
+    }
+}
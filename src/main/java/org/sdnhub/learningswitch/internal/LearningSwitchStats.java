@@ -0,0 +1,124 @@
+package org.sdnhub.learningswitch.internal;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.sdnhub.learningswitch.LatencyStatistics;
+import org.sdnhub.learningswitch.LearningSwitchStatistics;
+import org.sdnhub.learningswitch.StatisticsCounter;
+
+/**
+ * Counters and latency histograms for the packet-in path. Updates are
+ * striped or single atomic increments; all aggregation happens when the
+ * statistics are read.
+ */
+public class LearningSwitchStats implements LearningSwitchStatsMXBean {
+    /**
+     * A value owned by another component, sampled when statistics are read.
+     */
+    public interface Gauge {
+        long value();
+    }
+
+    final StripedCounter packetIns = new StripedCounter();
+    final StripedCounter hubFloods = new StripedCounter();
+    final StripedCounter unknownUnicastFloods = new StripedCounter();
+    final StripedCounter macLearns = new StripedCounter();
+    final StripedCounter macMoves = new StripedCounter();
+    // Forwarding flows programmed in answer to a packet-in; hub, admission
+    // and proactive flows and removals are not counted
+    final StripedCounter flowInstalls = new StripedCounter();
+    final StripedCounter flowInstallFailures = new StripedCounter();
+    final StripedCounter flowInvalidations = new StripedCounter();
+    final StripedCounter dampedForwards = new StripedCounter();
+
+    final LatencyHistogram packetInLatency = new LatencyHistogram("packetIn");
+    final LatencyHistogram decodeLatency = new LatencyHistogram("decode");
+
+    private final List<String> gaugeNames = new CopyOnWriteArrayList<String>();
+    private final List<Gauge> gauges = new CopyOnWriteArrayList<Gauge>();
+
+    public synchronized void addGauge(String name, Gauge gauge) {
+        gaugeNames.add(name);
+        gauges.add(gauge);
+    }
+
+    @Override
+    public Map<String, Long> getCounters() {
+        Map<String, Long> counters = new LinkedHashMap<String, Long>();
+        counters.put("packetIns", packetIns.sum());
+        counters.put("hubFloods", hubFloods.sum());
+        counters.put("unknownUnicastFloods", unknownUnicastFloods.sum());
+        counters.put("macLearns", macLearns.sum());
+        counters.put("macMoves", macMoves.sum());
+        counters.put("flowInstalls", flowInstalls.sum());
+        counters.put("flowInstallFailures", flowInstallFailures.sum());
+        counters.put("flowInvalidations", flowInvalidations.sum());
+        counters.put("dampedForwards", dampedForwards.sum());
+        synchronized (this) {
+            for (int i = 0; i < gauges.size(); i++) {
+                counters.put(gaugeNames.get(i), gauges.get(i).value());
+            }
+        }
+        return counters;
+    }
+
+    public LearningSwitchStatistics toStatistics() {
+        List<StatisticsCounter> counters = new ArrayList<StatisticsCounter>();
+        for (Map.Entry<String, Long> entry : getCounters().entrySet()) {
+            counters.add(new StatisticsCounter(entry.getKey(), entry.getValue()));
+        }
+        List<LatencyStatistics> latencies = new ArrayList<LatencyStatistics>();
+        latencies.add(packetInLatency.snapshot());
+        latencies.add(decodeLatency.snapshot());
+        return new LearningSwitchStatistics(counters, latencies);
+    }
+
+    @Override
+    public long getPacketIns() {
+        return packetIns.sum();
+    }
+
+    @Override
+    public long getHubFloods() {
+        return hubFloods.sum();
+    }
+
+    @Override
+    public long getUnknownUnicastFloods() {
+        return unknownUnicastFloods.sum();
+    }
+
+    @Override
+    public long getMacLearns() {
+        return macLearns.sum();
+    }
+
+    @Override
+    public long getMacMoves() {
+        return macMoves.sum();
+    }
+
+    @Override
+    public long getFlowInstalls() {
+        return flowInstalls.sum();
+    }
+
+    @Override
+    public long getFlowInstallFailures() {
+        return flowInstallFailures.sum();
+    }
+
+    @Override
+    public long getPacketInP99Nanos() {
+        return packetInLatency.snapshot().getP99Nanos();
+    }
+
+    @Override
+    public long getDecodeP99Nanos() {
+        return decodeLatency.snapshot().getP99Nanos();
+    }
+}
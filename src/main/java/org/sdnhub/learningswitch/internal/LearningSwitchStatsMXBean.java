@@ -0,0 +1,34 @@
+package org.sdnhub.learningswitch.internal;
+
+import java.util.Map;
+
+/**
+ * JMX view of the learning switch hot-path statistics.
+ */
+public interface LearningSwitchStatsMXBean {
+    Map<String, Long> getCounters();
+
+    long getPacketIns();
+
+    long getHubFloods();
+
+    long getUnknownUnicastFloods();
+
+    long getMacLearns();
+
+    long getMacMoves();
+
+    /**
+     * Successful addFlow calls for reactive forwarding flows.
+     */
+    long getFlowInstalls();
+
+    /**
+     * Failed addFlow calls for reactive forwarding flows.
+     */
+    long getFlowInstallFailures();
+
+    long getPacketInP99Nanos();
+
+    long getDecodeP99Nanos();
+}
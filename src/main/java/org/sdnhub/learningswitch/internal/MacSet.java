@@ -0,0 +1,199 @@
+package org.sdnhub.learningswitch.internal;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Set of MAC addresses on primitive longs with lock-free, allocation-free
+ * membership tests.
+ *
+ * Members live in an open-addressing table; in front of it sits a small
+ * bloom filter so that the common miss is answered from one or two words
+ * without probing. Removal leaves the filter bits set until the next
+ * rebuild, which only costs the occasional extra probe.
+ */
+public class MacSet {
+    private static final long EMPTY = 0L;
+    private static final long DELETED = -1L;
+    // Stored keys carry a marker bit above the 48 MAC bits so that MAC 0
+    // can never be mistaken for an empty slot
+    private static final long PRESENT = 1L << 48;
+
+    private volatile AtomicLongArray slots;
+    private volatile AtomicLongArray bloom;
+    private int size;
+    private int used;
+
+    public MacSet() {
+        this(1024);
+    }
+
+    public MacSet(int initialCapacity) {
+        int capacity = MacTable.tableSizeFor(initialCapacity);
+        this.slots = new AtomicLongArray(capacity);
+        this.bloom = new AtomicLongArray(capacity / 8);
+    }
+
+    public boolean contains(long mac) {
+        long key = mac | PRESENT;
+        int hash = MacTable.hash(mac);
+        if (!mightContain(bloom, hash)) {
+            return false;
+        }
+        AtomicLongArray table = slots;
+        int mask = table.length() - 1;
+        int index = hash & mask;
+        for (int probes = 0; probes <= mask; probes++) {
+            long slot = table.get(index);
+            if (slot == EMPTY) {
+                return false;
+            }
+            if (slot == key) {
+                return true;
+            }
+            index = (index + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the MAC was not already a member
+     */
+    public synchronized boolean add(long mac) {
+        long key = mac | PRESENT;
+        int hash = MacTable.hash(mac);
+        AtomicLongArray table = slots;
+        int mask = table.length() - 1;
+        int index = hash & mask;
+        int free = -1;
+        for (int probes = 0; probes <= mask; probes++) {
+            long slot = table.get(index);
+            if (slot == EMPTY) {
+                break;
+            }
+            if (slot == key) {
+                return false;
+            }
+            if (slot == DELETED && free < 0) {
+                free = index;
+            }
+            index = (index + 1) & mask;
+        }
+        // Filter bits go in first so a reader that finds the key has
+        // necessarily passed the filter
+        setBloom(bloom, hash);
+        if (free >= 0) {
+            table.set(free, key);
+        } else {
+            table.set(index, key);
+            used++;
+        }
+        size++;
+        if (used * 4 >= table.length() * 3) {
+            rebuild();
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the MAC was a member
+     */
+    public synchronized boolean remove(long mac) {
+        long key = mac | PRESENT;
+        AtomicLongArray table = slots;
+        int mask = table.length() - 1;
+        int index = MacTable.hash(mac) & mask;
+        for (int probes = 0; probes <= mask; probes++) {
+            long slot = table.get(index);
+            if (slot == EMPTY) {
+                return false;
+            }
+            if (slot == key) {
+                table.set(index, DELETED);
+                size--;
+                return true;
+            }
+            index = (index + 1) & mask;
+        }
+        return false;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Returns the members as MAC values.
+     */
+    public synchronized long[] toArray() {
+        long[] members = new long[size];
+        AtomicLongArray table = slots;
+        int n = 0;
+        for (int i = 0; i < table.length(); i++) {
+            long slot = table.get(i);
+            if (slot != EMPTY && slot != DELETED) {
+                members[n++] = slot & ~PRESENT;
+            }
+        }
+        return members;
+    }
+
+    private static boolean mightContain(AtomicLongArray filter, int hash) {
+        int bits = filter.length() * 64;
+        int h1 = hash & (bits - 1);
+        int h2 = (hash >>> 16 | hash << 16) & (bits - 1);
+        return (filter.get(h1 >>> 6) & (1L << h1)) != 0
+                && (filter.get(h2 >>> 6) & (1L << h2)) != 0;
+    }
+
+    private static void setBloom(AtomicLongArray filter, int hash) {
+        int bits = filter.length() * 64;
+        int h1 = hash & (bits - 1);
+        int h2 = (hash >>> 16 | hash << 16) & (bits - 1);
+        setBit(filter, h1);
+        setBit(filter, h2);
+    }
+
+    private static void setBit(AtomicLongArray filter, int bit) {
+        int word = bit >>> 6;
+        long mask = 1L << bit;
+        long current;
+        do {
+            current = filter.get(word);
+            if ((current & mask) != 0) {
+                return;
+            }
+        } while (!filter.compareAndSet(word, current, current | mask));
+    }
+
+    /**
+     * Rehashes into a table sized for the live members and rebuilds the
+     * filter from scratch, dropping bits left behind by removals. The filter
+     * is published before the table so readers never miss a member.
+     */
+    private void rebuild() {
+        AtomicLongArray old = slots;
+        int capacity = old.length();
+        if (size * 2 >= capacity) {
+            capacity <<= 1;
+        }
+        AtomicLongArray table = new AtomicLongArray(capacity);
+        AtomicLongArray filter = new AtomicLongArray(capacity / 8);
+        int mask = capacity - 1;
+        for (int i = 0; i < old.length(); i++) {
+            long slot = old.get(i);
+            if (slot == EMPTY || slot == DELETED) {
+                continue;
+            }
+            int hash = MacTable.hash(slot & ~PRESENT);
+            int index = hash & mask;
+            while (table.get(index) != EMPTY) {
+                index = (index + 1) & mask;
+            }
+            table.set(index, slot);
+            setBloom(filter, hash);
+        }
+        used = size;
+        bloom = filter;
+        slots = table;
+    }
+}
@@ -0,0 +1,709 @@
+package org.sdnhub.learningswitch.internal;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.opendaylight.controller.sal.core.Node;
+import org.opendaylight.controller.sal.core.NodeConnector;
+
+/**
+ * MAC learning table partitioned by switch.
+ *
+ * Each partition is an open-addressing hash table keyed on the primitive
+ * 48-bit MAC value, so lookups neither box the key nor take a lock. Writers
+ * are serialized per partition, which means packet-ins from different
+ * switches never contend with each other.
+ *
+ * Partitions are bounded: entries idle for longer than the idle timeout are
+ * aged out through a hashed timing wheel that is advanced from the learning
+ * path, and when a partition is full the entry closest to its deadline is
+ * evicted to make room.
+ *
+ * Eviction is not constant time: it walks the wheel from the current tick
+ * until it finds an entry still due in its bucket, rescheduling entries
+ * refreshed since they were filed, so its cost grows with the number of
+ * busy hosts filed ahead of the first idle one. Without aging it samples
+ * {@link #EVICTION_SAMPLES} slots instead and evicts the least recently seen
+ * of those, which is approximate.
+ */
+public class MacTable {
+    static final int DEFAULT_INITIAL_CAPACITY = 256;
+    static final int DEFAULT_MAX_ENTRIES = 8192;
+    static final long DEFAULT_IDLE_TIMEOUT = 300000L;
+
+    private static final int WHEEL_SIZE = 64;
+    /**
+     * Live slots looked at when evicting from a table that does not age.
+     */
+    private static final int EVICTION_SAMPLES = 16;
+
+    /**
+     * Source of the current time in milliseconds, replaceable in tests.
+     */
+    interface Clock {
+        long millis();
+    }
+
+    static final Clock SYSTEM_CLOCK = new Clock() {
+        @Override
+        public long millis() {
+            return System.currentTimeMillis();
+        }
+    };
+
+    /**
+     * Receives live entries during a traversal.
+     */
+    public interface Visitor {
+        void visit(Node node, long mac, NodeConnector port, long lastSeen);
+    }
+
+    /**
+     * Told about entries the table drops on its own, called with the
+     * partition locked.
+     */
+    public interface RemovalListener {
+        /**
+         * @param evicted
+         *            true if the entry made room in a full partition, false
+         *            if it went idle
+         */
+        void entryRemoved(Node node, long mac, NodeConnector port, boolean evicted);
+    }
+
+    private final ConcurrentMap<Node, Partition> partitions =
+            new ConcurrentHashMap<Node, Partition>();
+    private final int initialCapacity;
+    private final int maxEntries;
+    private final long idleTimeout;
+    private final Clock clock;
+    private final AtomicLong aged = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+    private volatile RemovalListener removalListener;
+
+    public MacTable() {
+        this(DEFAULT_INITIAL_CAPACITY, DEFAULT_MAX_ENTRIES, DEFAULT_IDLE_TIMEOUT);
+    }
+
+    /**
+     * @param initialCapacity
+     *            initial slot count of each partition
+     * @param maxEntries
+     *            maximum number of MACs per switch, 0 for unbounded
+     * @param idleTimeout
+     *            milliseconds without traffic after which a MAC is
+     *            forgotten, 0 to never age
+     */
+    public MacTable(int initialCapacity, int maxEntries, long idleTimeout) {
+        this(initialCapacity, maxEntries, idleTimeout, SYSTEM_CLOCK);
+    }
+
+    MacTable(int initialCapacity, int maxEntries, long idleTimeout, Clock clock) {
+        this.initialCapacity = tableSizeFor(initialCapacity);
+        this.maxEntries = Math.max(maxEntries, 0);
+        this.idleTimeout = Math.max(idleTimeout, 0L);
+        this.clock = clock;
+    }
+
+    public void setRemovalListener(RemovalListener removalListener) {
+        this.removalListener = removalListener;
+    }
+
+    /**
+     * Returns the port the MAC was learned on for the given switch, or null.
+     */
+    public NodeConnector get(Node node, long mac) {
+        Partition partition = partitions.get(node);
+        if (partition == null) {
+            return null;
+        }
+        return partition.get(mac);
+    }
+
+    /**
+     * Learns the MAC on the given port of the port's switch, refreshing its
+     * idle timer.
+     *
+     * @return the port previously associated with the MAC on that switch,
+     *         or null if the MAC was unknown or its entry had gone idle
+     */
+    public NodeConnector put(NodeConnector port, long mac) {
+        return partitionFor(port.getNode()).put(mac, port, clock.millis());
+    }
+
+    /**
+     * Reinstates an entry saved before a restart, keeping its original
+     * last-seen time so it ages out on schedule. MACs learned in the meantime
+     * take precedence.
+     *
+     * @return true if the entry was reinstated, false if it had gone idle or
+     *         the MAC was learned again since
+     */
+    public boolean restore(NodeConnector port, long mac, long lastSeen) {
+        long now = clock.millis();
+        if (idleTimeout > 0 && now - lastSeen >= idleTimeout) {
+            return false;
+        }
+        return partitionFor(port.getNode()).restore(mac, port, Math.min(lastSeen, now), now);
+    }
+
+    public NodeConnector remove(Node node, long mac) {
+        Partition partition = partitions.get(node);
+        if (partition == null) {
+            return null;
+        }
+        return partition.remove(mac);
+    }
+
+    /**
+     * Drops everything learned on the given switch.
+     */
+    public void removeNode(Node node) {
+        partitions.remove(node);
+    }
+
+    /**
+     * Ages out idle entries on every switch. Learning already does this for
+     * its own partition; this is for switches that have gone quiet.
+     */
+    public void expire() {
+        long now = clock.millis();
+        for (Partition partition : partitions.values()) {
+            partition.expire(now);
+        }
+    }
+
+    /**
+     * Visits every live entry learned on the node. The traversal does not
+     * lock the partition and sees entries as they are while it runs.
+     */
+    public void forEach(Node node, Visitor visitor) {
+        Partition partition = partitions.get(node);
+        if (partition != null) {
+            partition.forEach(node, visitor);
+        }
+    }
+
+    /**
+     * Visits every live entry on every switch.
+     */
+    public void forEach(Visitor visitor) {
+        for (Map.Entry<Node, Partition> entry : partitions.entrySet()) {
+            entry.getValue().forEach(entry.getKey(), visitor);
+        }
+    }
+
+    /**
+     * Returns every port the MAC is currently learned on, one per switch.
+     */
+    public List<NodeConnector> locate(long mac) {
+        List<NodeConnector> locations = new ArrayList<NodeConnector>();
+        for (Partition partition : partitions.values()) {
+            NodeConnector port = partition.get(mac);
+            if (port != null) {
+                locations.add(port);
+            }
+        }
+        return locations;
+    }
+
+    /**
+     * Visits the entry for the MAC on every switch that has learned it.
+     */
+    public void lookup(long mac, Visitor visitor) {
+        long now = clock.millis();
+        for (Map.Entry<Node, Partition> entry : partitions.entrySet()) {
+            Entry found = entry.getValue().getEntry(mac);
+            if (found != null && (idleTimeout == 0 || now - found.lastSeen < idleTimeout)) {
+                visitor.visit(entry.getKey(), found.mac, found.port, found.lastSeen);
+            }
+        }
+    }
+
+    /**
+     * Copies each switch's entries as of one instant, sorted by MAC. A
+     * partition is locked only while its slots are copied, so learning on
+     * other switches carries on and no switch is ever seen half-updated.
+     */
+    public List<Snapshot> snapshot() {
+        List<Snapshot> snapshots = new ArrayList<Snapshot>(partitions.size());
+        for (Map.Entry<Node, Partition> entry : partitions.entrySet()) {
+            snapshots.add(entry.getValue().snapshot(entry.getKey()));
+        }
+        return snapshots;
+    }
+
+    public int size(Node node) {
+        Partition partition = partitions.get(node);
+        return (partition == null) ? 0 : partition.size();
+    }
+
+    public int size() {
+        int size = 0;
+        for (Partition partition : partitions.values()) {
+            size += partition.size();
+        }
+        return size;
+    }
+
+    /**
+     * Number of entries removed because they went idle.
+     */
+    public long getAgedCount() {
+        return aged.get();
+    }
+
+    /**
+     * Number of entries removed to make room in a full partition.
+     */
+    public long getEvictedCount() {
+        return evicted.get();
+    }
+
+    public void clear() {
+        partitions.clear();
+    }
+
+    private Partition partitionFor(Node node) {
+        Partition partition = partitions.get(node);
+        if (partition == null) {
+            Partition created = new Partition(node, initialCapacity);
+            partition = partitions.putIfAbsent(node, created);
+            if (partition == null) {
+                partition = created;
+            }
+        }
+        return partition;
+    }
+
+    static int tableSizeFor(int capacity) {
+        int size = 16;
+        while (size < capacity && size < (1 << 30)) {
+            size <<= 1;
+        }
+        return size;
+    }
+
+    /**
+     * Murmur3 finalizer, spreads the low-entropy OUI bits over the index.
+     */
+    static int hash(long mac) {
+        mac ^= mac >>> 33;
+        mac *= 0xff51afd7ed558ccdL;
+        mac ^= mac >>> 33;
+        mac *= 0xc4ceb9fe1a85ec53L;
+        mac ^= mac >>> 33;
+        return (int) mac;
+    }
+
+    /**
+     * Slot content. The (mac, port) pair is immutable, so readers always
+     * see a consistent binding without locking; only the last-seen time is
+     * refreshed in place.
+     */
+    static final class Entry {
+        final long mac;
+        final NodeConnector port;
+        volatile long lastSeen;
+
+        Entry(long mac, NodeConnector port, long lastSeen) {
+            this.mac = mac;
+            this.port = port;
+            this.lastSeen = lastSeen;
+        }
+    }
+
+    private static final Entry TOMBSTONE = new Entry(-1L, null, 0L);
+
+    private static final Comparator<Entry> BY_MAC = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry a, Entry b) {
+            return (a.mac < b.mac) ? -1 : ((a.mac == b.mac) ? 0 : 1);
+        }
+    };
+
+    /**
+     * Immutable copy of one switch's entries, in ascending MAC order.
+     */
+    public static final class Snapshot {
+        public final Node node;
+        public final long[] macs;
+        public final NodeConnector[] ports;
+        public final long[] lastSeen;
+
+        Snapshot(Node node, Entry[] entries) {
+            this.node = node;
+            this.macs = new long[entries.length];
+            this.ports = new NodeConnector[entries.length];
+            this.lastSeen = new long[entries.length];
+            for (int i = 0; i < entries.length; i++) {
+                macs[i] = entries[i].mac;
+                ports[i] = entries[i].port;
+                lastSeen[i] = entries[i].lastSeen;
+            }
+        }
+
+        public int size() {
+            return macs.length;
+        }
+    }
+
+    /**
+     * One switch worth of MAC entries. Reads are lock-free; all mutations,
+     * including the timing wheel, happen while holding the partition monitor.
+     */
+    final class Partition {
+        private final Node node;
+        private volatile AtomicReferenceArray<Entry> slots;
+        private int size;
+        private int used; // live entries plus tombstones
+        private int evictionCursor;
+
+        // Hashed timing wheel. Each live entry sits in the bucket of its
+        // deadline tick; bucket contents are re-checked when the tick comes
+        // round, so refreshing an entry is a single volatile write.
+        private final ArrayDeque<Entry>[] wheel;
+        private final long tickMillis;
+        private long currentTick;
+
+        @SuppressWarnings("unchecked")
+        Partition(Node node, int capacity) {
+            this.node = node;
+            this.slots = new AtomicReferenceArray<Entry>(capacity);
+            this.wheel = new ArrayDeque[WHEEL_SIZE];
+            for (int i = 0; i < WHEEL_SIZE; i++) {
+                wheel[i] = new ArrayDeque<Entry>();
+            }
+            this.tickMillis = Math.max(idleTimeout / (WHEEL_SIZE / 2), 1L);
+            this.currentTick = clock.millis() / tickMillis;
+        }
+
+        NodeConnector get(long mac) {
+            Entry entry = find(slots, mac);
+            if (entry == null) {
+                return null;
+            }
+            if (idleTimeout > 0
+                    && clock.millis() - entry.lastSeen >= idleTimeout) {
+                return null;
+            }
+            return entry.port;
+        }
+
+        Entry getEntry(long mac) {
+            return find(slots, mac);
+        }
+
+        void forEach(Node node, Visitor visitor) {
+            AtomicReferenceArray<Entry> table = slots;
+            long now = clock.millis();
+            for (int i = 0; i < table.length(); i++) {
+                Entry entry = table.get(i);
+                if (entry == null || entry == TOMBSTONE) {
+                    continue;
+                }
+                if (idleTimeout > 0 && now - entry.lastSeen >= idleTimeout) {
+                    continue;
+                }
+                visitor.visit(node, entry.mac, entry.port, entry.lastSeen);
+            }
+        }
+
+        synchronized NodeConnector put(long mac, NodeConnector port, long now) {
+            advance(now);
+            AtomicReferenceArray<Entry> table = slots;
+            int mask = table.length() - 1;
+            int index = hash(mac) & mask;
+            int free = -1;
+            for (int probes = 0; probes <= mask; probes++) {
+                Entry entry = table.get(index);
+                if (entry == null) {
+                    break;
+                }
+                if (entry == TOMBSTONE) {
+                    if (free < 0) {
+                        free = index;
+                    }
+                } else if (entry.mac == mac) {
+                    if (idleTimeout > 0 && now - entry.lastSeen >= idleTimeout) {
+                        // Idle but not swept yet: the host is back, not moved
+                        Entry created = new Entry(mac, port, now);
+                        table.set(index, created);
+                        schedule(created);
+                        aged.incrementAndGet();
+                        removed(entry, false);
+                        return null;
+                    }
+                    if (entry.port.equals(port)) {
+                        entry.lastSeen = now;
+                    } else {
+                        Entry moved = new Entry(mac, port, now);
+                        table.set(index, moved);
+                        schedule(moved);
+                    }
+                    return entry.port;
+                }
+                index = (index + 1) & mask;
+            }
+            if (maxEntries > 0 && size >= maxEntries && evictOne()) {
+                // Eviction may have turned the slot we were heading for
+                // into a tombstone; the free/null slot found above is still
+                // a valid insertion point for this key.
+                evicted.incrementAndGet();
+            }
+            Entry created = new Entry(mac, port, now);
+            if (free >= 0) {
+                table.set(free, created);
+            } else {
+                table.set(index, created);
+                used++;
+            }
+            size++;
+            schedule(created);
+            if (used * 4 >= table.length() * 3) {
+                rehash();
+            }
+            return null;
+        }
+
+        Snapshot snapshot(Node node) {
+            Entry[] copies;
+            synchronized (this) {
+                AtomicReferenceArray<Entry> table = slots;
+                long now = clock.millis();
+                copies = new Entry[size];
+                int n = 0;
+                for (int i = 0; i < table.length() && n < copies.length; i++) {
+                    Entry entry = table.get(i);
+                    if (entry == null || entry == TOMBSTONE) {
+                        continue;
+                    }
+                    if (idleTimeout > 0 && now - entry.lastSeen >= idleTimeout) {
+                        continue;
+                    }
+                    // Fresh entry: the live one's last-seen keeps moving
+                    copies[n++] = new Entry(entry.mac, entry.port, entry.lastSeen);
+                }
+                if (n < copies.length) {
+                    copies = Arrays.copyOf(copies, n);
+                }
+            }
+            Arrays.sort(copies, BY_MAC);
+            return new Snapshot(node, copies);
+        }
+
+        synchronized boolean restore(long mac, NodeConnector port, long lastSeen, long now) {
+            Entry existing = find(slots, mac);
+            if (existing != null && (idleTimeout == 0 || now - existing.lastSeen < idleTimeout)) {
+                return false;
+            }
+            put(mac, port, now);
+            // The wheel slot stays at the later deadline; get() already
+            // judges idleness by lastSeen, the wheel catches up lazily
+            Entry entry = find(slots, mac);
+            if (entry != null) {
+                entry.lastSeen = lastSeen;
+            }
+            return true;
+        }
+
+        synchronized NodeConnector remove(long mac) {
+            Entry entry = find(slots, mac);
+            if (entry == null) {
+                return null;
+            }
+            unlink(entry);
+            return entry.port;
+        }
+
+        synchronized void expire(long now) {
+            advance(now);
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        private Entry find(AtomicReferenceArray<Entry> table, long mac) {
+            int mask = table.length() - 1;
+            int index = hash(mac) & mask;
+            for (int probes = 0; probes <= mask; probes++) {
+                Entry entry = table.get(index);
+                if (entry == null) {
+                    return null;
+                }
+                if (entry != TOMBSTONE && entry.mac == mac) {
+                    return entry;
+                }
+                index = (index + 1) & mask;
+            }
+            return null;
+        }
+
+        /**
+         * Replaces the given entry's slot with a tombstone if the entry is
+         * still the live binding for its MAC.
+         */
+        private boolean unlink(Entry target) {
+            AtomicReferenceArray<Entry> table = slots;
+            int mask = table.length() - 1;
+            int index = hash(target.mac) & mask;
+            for (int probes = 0; probes <= mask; probes++) {
+                Entry entry = table.get(index);
+                if (entry == null) {
+                    return false;
+                }
+                if (entry == target) {
+                    table.set(index, TOMBSTONE);
+                    size--;
+                    return true;
+                }
+                index = (index + 1) & mask;
+            }
+            return false;
+        }
+
+        private void schedule(Entry entry) {
+            if (idleTimeout == 0) {
+                return;
+            }
+            long deadline = (entry.lastSeen + idleTimeout) / tickMillis;
+            if (deadline <= currentTick) {
+                deadline = currentTick + 1;
+            } else if (deadline - currentTick >= WHEEL_SIZE) {
+                deadline = currentTick + WHEEL_SIZE - 1;
+            }
+            wheel[(int) (deadline & (WHEEL_SIZE - 1))].add(entry);
+        }
+
+        /**
+         * Processes every bucket whose tick has passed. Entries refreshed
+         * since they were scheduled are pushed to their new deadline,
+         * replaced or removed entries are simply dropped from the wheel.
+         */
+        private void advance(long now) {
+            if (idleTimeout == 0) {
+                return;
+            }
+            long nowTick = now / tickMillis;
+            if (nowTick <= currentTick) {
+                return;
+            }
+            long ticks = Math.min(nowTick - currentTick, WHEEL_SIZE);
+            long startTick = currentTick;
+            currentTick = nowTick;
+            for (long t = 1; t <= ticks; t++) {
+                ArrayDeque<Entry> bucket = wheel[(int) ((startTick + t) & (WHEEL_SIZE - 1))];
+                for (int n = bucket.size(); n > 0; n--) {
+                    Entry entry = bucket.poll();
+                    if (find(slots, entry.mac) != entry) {
+                        continue;
+                    }
+                    if (now - entry.lastSeen >= idleTimeout) {
+                        if (unlink(entry)) {
+                            aged.incrementAndGet();
+                            removed(entry, false);
+                        }
+                    } else {
+                        schedule(entry);
+                    }
+                }
+            }
+        }
+
+        private void removed(Entry entry, boolean evicted) {
+            RemovalListener listener = removalListener;
+            if (listener != null) {
+                listener.entryRemoved(node, entry.mac, entry.port, evicted);
+            }
+        }
+
+        /**
+         * Removes the live entry nearest to its deadline, walking the wheel
+         * from the current tick onward. Entries refreshed since they were
+         * scheduled are moved on to their real deadline, as in
+         * {@link #advance}, so a busy host is never evicted ahead of idle
+         * ones.
+         */
+        private boolean evictOne() {
+            if (idleTimeout > 0) {
+                for (int t = 1; t <= WHEEL_SIZE; t++) {
+                    long tick = currentTick + t;
+                    ArrayDeque<Entry> bucket = wheel[(int) (tick & (WHEEL_SIZE - 1))];
+                    for (int n = bucket.size(); n > 0; n--) {
+                        Entry entry = bucket.poll();
+                        if (find(slots, entry.mac) != entry) {
+                            continue;
+                        }
+                        if ((entry.lastSeen + idleTimeout) / tickMillis > tick && t < WHEEL_SIZE) {
+                            schedule(entry);
+                            continue;
+                        }
+                        if (unlink(entry)) {
+                            removed(entry, true);
+                            return true;
+                        }
+                    }
+                }
+            }
+            // Not aging, or nothing left on the wheel: evict the least
+            // recently seen of a few live slots
+            AtomicReferenceArray<Entry> table = slots;
+            int mask = table.length() - 1;
+            Entry oldest = null;
+            int sampled = 0;
+            for (int probes = 0; probes <= mask && sampled < EVICTION_SAMPLES; probes++) {
+                Entry entry = table.get(evictionCursor);
+                evictionCursor = (evictionCursor + 1) & mask;
+                if (entry == null || entry == TOMBSTONE) {
+                    continue;
+                }
+                sampled++;
+                if (oldest == null || entry.lastSeen < oldest.lastSeen) {
+                    oldest = entry;
+                }
+            }
+            if (oldest != null && unlink(oldest)) {
+                removed(oldest, true);
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Rebuilds the table without tombstones, growing it when live
+         * entries alone would exceed half the capacity. Readers keep probing
+         * the old array until the new one is published.
+         */
+        private void rehash() {
+            AtomicReferenceArray<Entry> old = slots;
+            int capacity = old.length();
+            if (size * 2 >= capacity) {
+                capacity <<= 1;
+            }
+            AtomicReferenceArray<Entry> table = new AtomicReferenceArray<Entry>(capacity);
+            int mask = capacity - 1;
+            for (int i = 0; i < old.length(); i++) {
+                Entry entry = old.get(i);
+                if (entry == null || entry == TOMBSTONE) {
+                    continue;
+                }
+                int index = hash(entry.mac) & mask;
+                while (table.get(index) != null) {
+                    index = (index + 1) & mask;
+                }
+                table.set(index, entry);
+            }
+            used = size;
+            slots = table;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package org.sdnhub.learningswitch.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.opendaylight.controller.sal.core.Node;
+import org.opendaylight.controller.sal.core.NodeConnector;
+import org.sdnhub.learningswitch.MacTableEntry;
+import org.sdnhub.learningswitch.MacTablePage;
+
+/**
+ * Point-in-time copy of the MAC table that can be paged through.
+ *
+ * Entries are ordered by switch, then MAC, and addressed by their position
+ * in that order, so a cursor stays valid for as long as the view is kept no
+ * matter how the live table changes in the meantime.
+ */
+public class MacTableView {
+    static final int DEFAULT_PAGE_SIZE = 1000;
+    static final int MAX_PAGE_SIZE = 10000;
+
+    private static final Comparator<MacTable.Snapshot> BY_NODE = new Comparator<MacTable.Snapshot>() {
+        @Override
+        public int compare(MacTable.Snapshot a, MacTable.Snapshot b) {
+            return a.node.toString().compareTo(b.node.toString());
+        }
+    };
+
+    private final long id;
+    private final long takenAt;
+    private final MacTable.Snapshot[] switches;
+    // offsets[i] is the position of the first entry of switches[i],
+    // offsets[switches.length] the total
+    private final int[] offsets;
+    // Entries per port, counted the first time a page is filtered by it
+    private final ConcurrentMap<NodeConnector, Integer> portTotals =
+            new ConcurrentHashMap<NodeConnector, Integer>();
+    private volatile long lastAccess;
+
+    public MacTableView(long id, List<MacTable.Snapshot> snapshots) {
+        this.id = id;
+        this.takenAt = System.currentTimeMillis();
+        this.lastAccess = takenAt;
+        this.switches = snapshots.toArray(new MacTable.Snapshot[snapshots.size()]);
+        Arrays.sort(switches, BY_NODE);
+        this.offsets = new int[switches.length + 1];
+        for (int i = 0; i < switches.length; i++) {
+            offsets[i + 1] = offsets[i] + switches[i].size();
+        }
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public long getTakenAt() {
+        return takenAt;
+    }
+
+    public long getLastAccess() {
+        return lastAccess;
+    }
+
+    /**
+     * Returns up to limit entries from cursor on, optionally restricted to
+     * one switch or one port.
+     *
+     * @param cursor
+     *            position to resume from, as returned in the previous page
+     * @param limit
+     *            page size, 0 for the default
+     */
+    public MacTablePage page(Node node, NodeConnector port, int cursor, int limit) {
+        lastAccess = System.currentTimeMillis();
+        if (port != null) {
+            node = port.getNode();
+        }
+        int size = (limit <= 0) ? DEFAULT_PAGE_SIZE : Math.min(limit, MAX_PAGE_SIZE);
+
+        int first = 0;
+        int last = switches.length;
+        if (node != null) {
+            first = indexOf(node);
+            last = (first < 0) ? -1 : first + 1;
+        }
+        if (first < 0) {
+            return new MacTablePage(id, takenAt, 0, new ArrayList<MacTableEntry>(), -1);
+        }
+        int start = offsets[first];
+        int end = offsets[last];
+
+        List<MacTableEntry> entries = new ArrayList<MacTableEntry>(Math.min(size, end - start));
+        int position = Math.max(cursor, start);
+        int s = switchAt(position, first, last);
+        while (position < end && entries.size() < size) {
+            while (position >= offsets[s + 1]) {
+                s++;
+            }
+            MacTable.Snapshot snapshot = switches[s];
+            int i = position - offsets[s];
+            if (port == null || port.equals(snapshot.ports[i])) {
+                entries.add(new MacTableEntry(EthernetHeader.formatMAC(snapshot.macs[i]),
+                        snapshot.node.toString(), snapshot.ports[i].toString(), snapshot.lastSeen[i]));
+            }
+            position++;
+        }
+        int total = (port == null) ? end - start : portTotal(port, first);
+        return new MacTablePage(id, takenAt, total, entries, (position < end) ? position : -1);
+    }
+
+    private int portTotal(NodeConnector port, int s) {
+        Integer total = portTotals.get(port);
+        if (total == null) {
+            int count = 0;
+            for (NodeConnector p : switches[s].ports) {
+                if (port.equals(p)) {
+                    count++;
+                }
+            }
+            total = count;
+            portTotals.put(port, total);
+        }
+        return total;
+    }
+
+    private int indexOf(Node node) {
+        for (int i = 0; i < switches.length; i++) {
+            if (switches[i].node.equals(node)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int switchAt(int position, int first, int last) {
+        for (int s = first; s < last; s++) {
+            if (position < offsets[s + 1]) {
+                return s;
+            }
+        }
+        return last;
+    }
+}
@@ -0,0 +1,133 @@
+package org.sdnhub.learningswitch.internal;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opendaylight.controller.sal.core.Node;
+import org.opendaylight.controller.sal.packet.RawPacket;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Spreads packet-in processing over a fixed set of worker threads.
+ *
+ * Packets are sharded by ingress switch, so every packet from a given switch
+ * is handled by the same worker in arrival order while different switches
+ * are processed in parallel. Each worker has a bounded queue; when it is
+ * full the packet is dropped instead of stalling the SAL thread.
+ */
+public class PacketInDispatcher {
+    protected static final Logger logger = LoggerFactory.getLogger(PacketInDispatcher.class);
+
+    static final int DEFAULT_WORKERS = 0;
+    static final int DEFAULT_QUEUE_SIZE = 4096;
+    static final long STOP_TIMEOUT = 5000L;
+
+    public interface Handler {
+        void handle(RawPacket packet);
+    }
+
+    private final Worker[] workers;
+    private final AtomicLong dropped = new AtomicLong();
+
+    public PacketInDispatcher(int workerCount, int queueSize, Handler handler) {
+        workers = new Worker[Math.max(workerCount, 1)];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Worker(i, new ArrayBlockingQueue<RawPacket>(Math.max(queueSize, 1)),
+                    handler);
+        }
+    }
+
+    public void start() {
+        for (Worker worker : workers) {
+            worker.start();
+        }
+    }
+
+    /**
+     * Interrupts the workers and waits up to {@link #STOP_TIMEOUT} for them
+     * to finish the packet in hand, so nothing touches the switch's state
+     * once the caller goes on to tear it down.
+     */
+    public void stop() {
+        for (Worker worker : workers) {
+            worker.interrupt();
+        }
+        long deadline = System.currentTimeMillis() + STOP_TIMEOUT;
+        for (Worker worker : workers) {
+            long left = deadline - System.currentTimeMillis();
+            try {
+                if (left > 0) {
+                    worker.join(left);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            if (worker.isAlive()) {
+                logger.warn("{} did not stop within {} ms", worker.getName(), STOP_TIMEOUT);
+            }
+        }
+    }
+
+    /**
+     * Queues the packet on its switch's worker.
+     *
+     * @return false if the worker's queue is full and the packet was dropped
+     */
+    public boolean dispatch(RawPacket packet) {
+        Node node = packet.getIncomingNodeConnector().getNode();
+        int shard = (node.hashCode() & Integer.MAX_VALUE) % workers.length;
+        if (!workers[shard].queue.offer(packet)) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    public int getWorkerCount() {
+        return workers.length;
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public int getQueuedCount() {
+        int queued = 0;
+        for (Worker worker : workers) {
+            queued += worker.queue.size();
+        }
+        return queued;
+    }
+
+    private static final class Worker extends Thread {
+        final BlockingQueue<RawPacket> queue;
+        private final Handler handler;
+
+        Worker(int index, BlockingQueue<RawPacket> queue, Handler handler) {
+            super("learningswitch-packetin-" + index);
+            setDaemon(true);
+            this.queue = queue;
+            this.handler = handler;
+        }
+
+        @Override
+        public void run() {
+            while (!isInterrupted()) {
+                RawPacket packet;
+                try {
+                    packet = queue.take();
+                } catch (InterruptedException e) {
+                    break;
+                }
+                try {
+                    handler.handle(packet);
+                } catch (RuntimeException e) {
+                    logger.warn("Packet-in processing failed on {}", getName(), e);
+                }
+            }
+        }
+    }
+}
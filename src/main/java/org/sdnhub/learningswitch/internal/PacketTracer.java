@@ -0,0 +1,145 @@
+package org.sdnhub.learningswitch.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opendaylight.controller.sal.core.NodeConnector;
+import org.sdnhub.learningswitch.PacketTrace;
+import org.sdnhub.learningswitch.PacketTraceStage;
+import org.sdnhub.learningswitch.PacketTraces;
+
+/**
+ * Sampled per-stage timing of packet-in processing.
+ *
+ * One packet-in in every sampleRate gets a {@link Trace} that the
+ * forwarding path stamps as it finishes each stage. Unsampled packets carry
+ * a null trace, so with sampling off the cost is one branch per stage.
+ * Finished traces at least as slow as the threshold go into an
+ * {@link EventRing}, which keeps the most recent ones.
+ */
+public class PacketTracer {
+    static final int DEFAULT_CAPACITY = 256;
+
+    static final int DECODE = 0;
+    static final int LEARN = 1;
+    static final int ADMIT = 2;
+    static final int LOOKUP = 3;
+    static final int FLOOD = 4;
+    static final int PROGRAM = 5;
+    static final int RELAY = 6;
+    static final int REDIRECT = 7;
+
+    private static final String[] STAGE_NAMES = {
+        "decode", "learn", "admit", "lookup", "flood", "program", "relay", "redirect"
+    };
+    private static final int MAX_MARKS = 8;
+
+    private final int sampleRate;
+    private final long slowThreshold;
+    private final EventRing<Trace> slow;
+    private final AtomicLong sampled = new AtomicLong();
+    private final AtomicLong kept = new AtomicLong();
+
+    /**
+     * @param sampleRate
+     *            trace one packet-in in this many, 0 to disable tracing
+     * @param slowThreshold
+     *            nanoseconds a trace must take to be kept
+     */
+    public PacketTracer(int sampleRate, long slowThreshold, int capacity) {
+        this.sampleRate = Math.max(sampleRate, 0);
+        this.slowThreshold = Math.max(slowThreshold, 0L);
+        this.slow = new EventRing<Trace>(capacity);
+    }
+
+    /**
+     * Returns a trace for the packet-in if it is sampled, null otherwise.
+     */
+    public Trace sample(long startTime) {
+        if (sampleRate == 0
+                || (sampleRate > 1 && ThreadLocalRandom.current().nextInt(sampleRate) != 0)) {
+            return null;
+        }
+        sampled.incrementAndGet();
+        return new Trace(startTime);
+    }
+
+    public void finish(Trace trace, NodeConnector incoming_connector, String result, long endTime) {
+        trace.end = endTime;
+        if (endTime - trace.start < slowThreshold) {
+            return;
+        }
+        trace.time = System.currentTimeMillis();
+        trace.incoming = incoming_connector;
+        trace.result = result;
+        kept.incrementAndGet();
+        slow.publish(trace);
+    }
+
+    /**
+     * The most recent slow traces, newest first.
+     */
+    public PacketTraces getTraces(int max) {
+        int limit = Math.max(max, 0);
+        EventRing.Batch<Trace> batch = slow.read(Math.max(slow.head() - limit, 0L), limit);
+        List<PacketTrace> traces = new ArrayList<PacketTrace>(batch.events.size());
+        for (Trace trace : batch.events) {
+            traces.add(trace.toPacketTrace());
+        }
+        Collections.reverse(traces);
+        return new PacketTraces(sampleRate, slowThreshold, sampled.get(), kept.get(), traces);
+    }
+
+    /**
+     * Stage timestamps of one packet-in. Only touched by the thread
+     * processing the packet until it is published.
+     */
+    public static final class Trace {
+        private final long start;
+        private final int[] stages = new int[MAX_MARKS];
+        private final long[] times = new long[MAX_MARKS];
+        private int marks;
+        private long src = -1L;
+        private long dst = -1L;
+        private long end;
+        private long time;
+        private NodeConnector incoming;
+        private String result;
+
+        Trace(long start) {
+            this.start = start;
+        }
+
+        /**
+         * Records that the stage has just finished.
+         */
+        public void mark(int stage) {
+            if (marks < MAX_MARKS) {
+                stages[marks] = stage;
+                times[marks] = System.nanoTime();
+                marks++;
+            }
+        }
+
+        public void addresses(long srcMac, long dstMac) {
+            this.src = srcMac;
+            this.dst = dstMac;
+        }
+
+        PacketTrace toPacketTrace() {
+            List<PacketTraceStage> list = new ArrayList<PacketTraceStage>(marks);
+            long previous = start;
+            for (int i = 0; i < marks; i++) {
+                list.add(new PacketTraceStage(STAGE_NAMES[stages[i]], times[i] - previous));
+                previous = times[i];
+            }
+            return new PacketTrace(time, (incoming == null) ? null : incoming.toString(),
+                    (src < 0) ? null : EthernetHeader.formatMAC(src),
+                    (dst < 0) ? null : EthernetHeader.formatMAC(dst),
+                    result, end - start, list);
+        }
+    }
+}
@@ -0,0 +1,524 @@
+package org.sdnhub.learningswitch.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+
+import org.opendaylight.controller.sal.core.Node;
+import org.opendaylight.controller.sal.core.NodeConnector;
+import org.sdnhub.learningswitch.LearningSwitchData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Learned state kept in a memory-mapped file so a restarted controller can
+ * forward straight away instead of flooding until everything is relearned.
+ *
+ * The file has a fixed layout: a header, a table of port names, an array of
+ * fixed-size MAC records and a region holding the data map. Every MAC entry
+ * owns a record slot for as long as it is learned, and every port name a
+ * slot for as long as an entry refers to it. A snapshot only stores the
+ * records that changed since the previous one, so the pages the OS writes
+ * back are the ones that actually changed. The data region is rewritten
+ * only when the data map has changed.
+ *
+ * When the records or the data region run out of room the snapshot is
+ * incomplete: that is logged once as a warning, and the number of entries
+ * left out of the latest snapshot is kept for the statistics.
+ *
+ * A new file is built next to the old one and only renamed over it once
+ * its first snapshot is complete, so the previous run's state survives a
+ * crash right after startup.
+ *
+ * Loading reads records straight out of the mapping; only port names are
+ * decoded, once per port.
+ */
+public class StateSnapshot {
+    protected static final Logger logger = LoggerFactory.getLogger(StateSnapshot.class);
+
+    static final String DEFAULT_FILE = "configuration/startup/learningswitch.snapshot";
+    static final int DEFAULT_INTERVAL = 30;
+    static final int DEFAULT_MAX_ENTRIES = 65536;
+
+    private static final int MAGIC = 0x4c53574d; // "LSWM"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int PORT_SLOT_SIZE = 64;
+    private static final int RECORD_SIZE = 24;
+    private static final int MAX_PORTS = 4096;
+    private static final int DATA_CAPACITY = 1 << 20;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    // Header fields
+    private static final int H_MAGIC = 0;
+    private static final int H_VERSION = 4;
+    private static final int H_SAVED_AT = 8;
+    private static final int H_PORT_CAPACITY = 16;
+    private static final int H_RECORD_CAPACITY = 20;
+    private static final int H_DATA_CAPACITY = 24;
+    private static final int H_PORT_COUNT = 28;
+    private static final int H_DATA_LENGTH = 32;
+
+    private final File file;
+    private final File temp;
+    private final int recordCapacity;
+    private boolean renamed;
+    private RandomAccessFile raf;
+    private MappedByteBuffer buffer;
+    private int portBase;
+    private int recordBase;
+    private int dataBase;
+
+    private final Map<NodeConnector, Integer> ports = new HashMap<NodeConnector, Integer>();
+    // Records referring to each port slot, indexed by 1-based reference
+    private final int[] portUsers = new int[MAX_PORTS + 1];
+    private final NodeConnector[] portNames = new NodeConnector[MAX_PORTS + 1];
+    private final ArrayDeque<Integer> freePorts = new ArrayDeque<Integer>();
+    private int nextPort;
+    private final Map<RecordKey, Slot> slots = new HashMap<RecordKey, Slot>();
+    private final ArrayDeque<Integer> freeSlots = new ArrayDeque<Integer>();
+    private int nextSlot;
+    private long pass;
+    private long dataVersion = -1L;
+    private int entriesLeftOut;
+    private volatile int unsavedEntries;
+    private volatile int unsavedData;
+
+    public StateSnapshot(File file, int maxEntries) {
+        this.file = file;
+        this.temp = new File(file.getPath() + ".tmp");
+        this.recordCapacity = Math.max(maxEntries, 1);
+    }
+
+    /**
+     * Creates (or truncates) the temporary file and maps it. The first
+     * snapshot after opening writes every entry and then replaces the file.
+     */
+    public synchronized void open() throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Cannot create directory " + parent);
+        }
+        portBase = HEADER_SIZE;
+        recordBase = portBase + MAX_PORTS * PORT_SLOT_SIZE;
+        dataBase = recordBase + recordCapacity * RECORD_SIZE;
+        long length = (long) dataBase + DATA_CAPACITY;
+
+        raf = new RandomAccessFile(temp, "rw");
+        raf.setLength(0);
+        raf.setLength(length);
+        buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+        buffer.putInt(H_MAGIC, MAGIC);
+        buffer.putInt(H_VERSION, VERSION);
+        buffer.putInt(H_PORT_CAPACITY, MAX_PORTS);
+        buffer.putInt(H_RECORD_CAPACITY, recordCapacity);
+        buffer.putInt(H_DATA_CAPACITY, DATA_CAPACITY);
+        buffer.putInt(H_PORT_COUNT, 0);
+        buffer.putInt(H_DATA_LENGTH, 0);
+
+        ports.clear();
+        Arrays.fill(portUsers, 0);
+        Arrays.fill(portNames, null);
+        freePorts.clear();
+        nextPort = 0;
+        slots.clear();
+        freeSlots.clear();
+        nextSlot = 0;
+        dataVersion = -1L;
+        renamed = false;
+    }
+
+    /**
+     * Brings the file up to date with the MAC table and, if its version
+     * moved, the data map, then flushes the dirty pages.
+     */
+    public synchronized void write(MacTable macTable, Map<UUID, LearningSwitchData> data,
+            long version) {
+        if (buffer == null) {
+            return;
+        }
+        final long current = ++pass;
+        MacTable.Visitor visitor = new MacTable.Visitor() {
+            @Override
+            public void visit(Node node, long mac, NodeConnector port, long lastSeen) {
+                writeEntry(node, mac, port, lastSeen, current);
+            }
+        };
+        entriesLeftOut = 0;
+        macTable.forEach(visitor);
+        // Entries that found no room may fit in what the forgotten ones
+        // leave behind; everything already written is skipped the second time
+        if (sweep(current) > 0 && entriesLeftOut > 0) {
+            entriesLeftOut = 0;
+            macTable.forEach(visitor);
+            sweep(current);
+        }
+        if (entriesLeftOut > 0 && unsavedEntries == 0) {
+            logger.warn("Snapshot {} is full, {} MAC entries are not saved; raise "
+                    + "learningswitch.snapshot.maxEntries", file, entriesLeftOut);
+        }
+        unsavedEntries = entriesLeftOut;
+        if (version != dataVersion) {
+            writeData(data);
+            dataVersion = version;
+        }
+        buffer.putLong(H_SAVED_AT, System.currentTimeMillis());
+        buffer.force();
+        if (!renamed) {
+            // The mapping stays valid across the rename, later snapshots
+            // update the file in place
+            try {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+                renamed = true;
+            } catch (IOException e) {
+                logger.warn("Could not replace snapshot {}, will retry: {}", file, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Frees the records of entries not seen in this pass.
+     *
+     * @return the number of records freed
+     */
+    private int sweep(long current) {
+        int freed = 0;
+        Iterator<Slot> it = slots.values().iterator();
+        while (it.hasNext()) {
+            Slot slot = it.next();
+            if (slot.pass != current) {
+                buffer.putInt(recordBase + slot.index * RECORD_SIZE, 0);
+                release(slot.portRef);
+                freeSlots.push(slot.index);
+                it.remove();
+                freed++;
+            }
+        }
+        return freed;
+    }
+
+    /**
+     * MAC entries the latest snapshot had no room for.
+     */
+    public int getUnsavedEntries() {
+        return unsavedEntries;
+    }
+
+    /**
+     * Data entries the latest snapshot had no room for.
+     */
+    public int getUnsavedData() {
+        return unsavedData;
+    }
+
+    public synchronized void close() {
+        if (buffer != null) {
+            buffer.force();
+            buffer = null;
+        }
+        if (raf != null) {
+            try {
+                raf.close();
+            } catch (IOException e) {
+                logger.debug("Failed to close snapshot file {}", file, e);
+            }
+            raf = null;
+        }
+    }
+
+    private void writeEntry(Node node, long mac, NodeConnector port, long lastSeen, long current) {
+        RecordKey key = new RecordKey(node, mac);
+        Slot slot = slots.get(key);
+        if (slot == null) {
+            int index;
+            if (!freeSlots.isEmpty()) {
+                index = freeSlots.pop();
+            } else if (nextSlot < recordCapacity) {
+                index = nextSlot++;
+            } else {
+                entriesLeftOut++;
+                return;
+            }
+            slot = new Slot(index);
+            slots.put(key, slot);
+        }
+        slot.pass = current;
+        int portRef = (slot.portRef != 0 && port.equals(portNames[slot.portRef]))
+                ? slot.portRef : portRef(port);
+        if (portRef == 0) {
+            // No room for the port name, the slot is freed with the stale
+            // ones at the end of the pass
+            slot.pass = 0;
+            entriesLeftOut++;
+            return;
+        }
+        if (slot.portRef == portRef && slot.lastSeen == lastSeen) {
+            return;
+        }
+        int offset = recordBase + slot.index * RECORD_SIZE;
+        // Payload first, port reference last: the reference is what marks
+        // the record as in use
+        buffer.putLong(offset + 8, mac);
+        buffer.putLong(offset + 16, lastSeen);
+        buffer.putInt(offset, portRef);
+        if (slot.portRef != portRef) {
+            portUsers[portRef]++;
+            release(slot.portRef);
+            slot.portRef = portRef;
+        }
+        slot.lastSeen = lastSeen;
+    }
+
+    /**
+     * Returns the 1-based index of the port's name in the port table, adding
+     * it if needed, or 0 if the table is full.
+     */
+    private int portRef(NodeConnector port) {
+        Integer ref = ports.get(port);
+        if (ref != null) {
+            return ref;
+        }
+        byte[] name = port.toString().getBytes(UTF8);
+        if (name.length > PORT_SLOT_SIZE - 2) {
+            return 0;
+        }
+        int index;
+        if (!freePorts.isEmpty()) {
+            index = freePorts.pop();
+        } else if (nextPort < MAX_PORTS) {
+            index = ++nextPort;
+            buffer.putInt(H_PORT_COUNT, nextPort);
+        } else {
+            return 0;
+        }
+        int offset = portBase + (index - 1) * PORT_SLOT_SIZE;
+        for (int i = 0; i < name.length; i++) {
+            buffer.put(offset + 2 + i, name[i]);
+        }
+        buffer.putShort(offset, (short) name.length);
+        ports.put(port, index);
+        portNames[index] = port;
+        return index;
+    }
+
+    /**
+     * Drops a record's reference to a port slot, freeing the slot once no
+     * record refers to it. Records are rewritten before their old port is
+     * released, so a freed slot is never referenced from the file.
+     */
+    private void release(int portRef) {
+        if (portRef == 0 || --portUsers[portRef] > 0) {
+            return;
+        }
+        buffer.putShort(portBase + (portRef - 1) * PORT_SLOT_SIZE, (short) 0);
+        ports.remove(portNames[portRef]);
+        portNames[portRef] = null;
+        freePorts.push(portRef);
+    }
+
+    private void writeData(Map<UUID, LearningSwitchData> data) {
+        ByteBuffer region = buffer.duplicate();
+        region.position(dataBase + 4);
+        region.limit(dataBase + DATA_CAPACITY);
+        int count = 0;
+        int leftOut = 0;
+        for (Map.Entry<UUID, LearningSwitchData> entry : data.entrySet()) {
+            if (leftOut > 0) {
+                leftOut++;
+                continue;
+            }
+            LearningSwitchData datum = entry.getValue();
+            int mark = region.position();
+            if (!putString(region, entry.getKey().toString())
+                    || !putString(region, datum.getUuid()) || !putString(region, datum.getFoo())
+                    || !putString(region, datum.getBar())) {
+                region.position(mark);
+                leftOut++;
+                continue;
+            }
+            count++;
+        }
+        buffer.putInt(dataBase, count);
+        buffer.putInt(H_DATA_LENGTH, region.position() - dataBase);
+        if (leftOut > 0 && unsavedData == 0) {
+            logger.warn("Snapshot {} has no room for the whole data map, {} entries are not saved",
+                    file, leftOut);
+        }
+        unsavedData = leftOut;
+    }
+
+    private static boolean putString(ByteBuffer region, String value) {
+        if (value == null) {
+            if (region.remaining() < 4) {
+                return false;
+            }
+            region.putInt(-1);
+            return true;
+        }
+        byte[] bytes = value.getBytes(UTF8);
+        if (region.remaining() < 4 + bytes.length) {
+            return false;
+        }
+        region.putInt(bytes.length);
+        region.put(bytes);
+        return true;
+    }
+
+    private static String getString(ByteBuffer region) {
+        int length = region.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        region.get(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    /**
+     * Restores a snapshot written by a previous run. Entries that have gone
+     * idle in the meantime and ports that no longer parse are skipped.
+     *
+     * @return the number of MAC entries restored, or -1 if there is no
+     *         snapshot
+     * @throws IOException
+     *             if the file cannot be read or is not a valid snapshot
+     */
+    public static int load(File file, MacTable macTable, Map<UUID, LearningSwitchData> data)
+            throws IOException {
+        if (!file.isFile()) {
+            return -1;
+        }
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            long length = in.length();
+            if (length < HEADER_SIZE) {
+                throw new IOException("Truncated snapshot " + file);
+            }
+            MappedByteBuffer map = in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+            if (map.getInt(H_MAGIC) != MAGIC || map.getInt(H_VERSION) != VERSION) {
+                throw new IOException("Not a learning switch snapshot: " + file);
+            }
+            try {
+                return load(map, length, macTable, data);
+            } catch (BufferUnderflowException e) {
+                throw new IOException("Corrupt snapshot " + file, e);
+            } catch (IndexOutOfBoundsException e) {
+                throw new IOException("Corrupt snapshot " + file, e);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Corrupt snapshot " + file, e);
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private static int load(MappedByteBuffer map, long length, MacTable macTable,
+            Map<UUID, LearningSwitchData> data) throws IOException {
+        int portCapacity = map.getInt(H_PORT_CAPACITY);
+        int recordCapacity = map.getInt(H_RECORD_CAPACITY);
+        int dataCapacity = map.getInt(H_DATA_CAPACITY);
+        int portCount = map.getInt(H_PORT_COUNT);
+        int dataLength = map.getInt(H_DATA_LENGTH);
+        long portBase = HEADER_SIZE;
+        long recordBase = portBase + (long) portCapacity * PORT_SLOT_SIZE;
+        long dataBase = recordBase + (long) recordCapacity * RECORD_SIZE;
+        if (portCapacity < 0 || recordCapacity < 0 || dataCapacity < 0 || portCount < 0
+                || portCount > portCapacity || dataLength > dataCapacity
+                || dataBase + dataCapacity > length) {
+            throw new IOException("Inconsistent snapshot header");
+        }
+
+        NodeConnector[] portTable = new NodeConnector[portCount];
+        for (int i = 0; i < portCount; i++) {
+            int offset = (int) portBase + i * PORT_SLOT_SIZE;
+            int nameLength = map.getShort(offset);
+            if (nameLength <= 0 || nameLength > PORT_SLOT_SIZE - 2) {
+                continue;
+            }
+            byte[] name = new byte[nameLength];
+            for (int b = 0; b < nameLength; b++) {
+                name[b] = map.get(offset + 2 + b);
+            }
+            portTable[i] = NodeConnector.fromString(new String(name, UTF8));
+        }
+
+        int restored = 0;
+        for (int i = 0; i < recordCapacity; i++) {
+            int offset = (int) recordBase + i * RECORD_SIZE;
+            int portRef = map.getInt(offset);
+            if (portRef <= 0 || portRef > portCount || portTable[portRef - 1] == null) {
+                continue;
+            }
+            if (macTable.restore(portTable[portRef - 1], map.getLong(offset + 8),
+                    map.getLong(offset + 16))) {
+                restored++;
+            }
+        }
+
+        if (dataLength >= 4) {
+            ByteBuffer region = map.duplicate();
+            region.position((int) dataBase);
+            region.limit((int) dataBase + dataLength);
+            int count = region.getInt();
+            for (int i = 0; i < count; i++) {
+                String key = getString(region);
+                String uuid = getString(region);
+                String foo = getString(region);
+                String bar = getString(region);
+                if (key != null) {
+                    data.put(UUID.fromString(key), new LearningSwitchData(uuid, foo, bar));
+                }
+            }
+        }
+        return restored;
+    }
+
+    private static final class RecordKey {
+        final Node node;
+        final long mac;
+
+        RecordKey(Node node, long mac) {
+            this.node = node;
+            this.mac = mac;
+        }
+
+        @Override
+        public int hashCode() {
+            return node.hashCode() * 31 + MacTable.hash(mac);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof RecordKey)) {
+                return false;
+            }
+            RecordKey other = (RecordKey) obj;
+            return mac == other.mac && node.equals(other.node);
+        }
+    }
+
+    private static final class Slot {
+        final int index;
+        int portRef;
+        long lastSeen;
+        long pass;
+
+        Slot(int index) {
+            this.index = index;
+        }
+    }
+}
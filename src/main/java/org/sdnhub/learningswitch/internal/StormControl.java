@@ -0,0 +1,150 @@
+package org.sdnhub.learningswitch.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opendaylight.controller.sal.core.Node;
+import org.opendaylight.controller.sal.core.NodeConnector;
+import org.sdnhub.learningswitch.PortDropStatistics;
+
+/**
+ * Broadcast and unknown-unicast storm control for controller floods.
+ *
+ * Every ingress port and every switch has its own token bucket. A flood is
+ * admitted only if both have a token left; past the limit packets are
+ * dropped, except for one in every {@code sampleRate} which is still let
+ * through so hosts behind a busy port are not cut off entirely.
+ */
+public class StormControl {
+    static final long DEFAULT_PORT_RATE = 0L;
+    static final long DEFAULT_NODE_RATE = 0L;
+
+    private final long portRate;
+    private final long portBurst;
+    private final long nodeRate;
+    private final long nodeBurst;
+    private final long sampleRate;
+
+    private final ConcurrentMap<NodeConnector, PortState> ports =
+            new ConcurrentHashMap<NodeConnector, PortState>();
+    private final ConcurrentMap<Node, TokenBucket> nodes =
+            new ConcurrentHashMap<Node, TokenBucket>();
+
+    /**
+     * Rates are floods per second, 0 disables that limit.
+     */
+    public StormControl(long portRate, long portBurst, long nodeRate, long nodeBurst,
+            long sampleRate) {
+        this.portRate = Math.max(portRate, 0L);
+        this.portBurst = (portBurst > 0) ? portBurst : Math.max(portRate, 1L);
+        this.nodeRate = Math.max(nodeRate, 0L);
+        this.nodeBurst = (nodeBurst > 0) ? nodeBurst : Math.max(nodeRate, 1L);
+        this.sampleRate = Math.max(sampleRate, 0L);
+    }
+
+    public boolean isEnabled() {
+        return portRate > 0 || nodeRate > 0;
+    }
+
+    /**
+     * Decides whether a packet received on the port may be flooded.
+     */
+    public boolean admitFlood(NodeConnector port) {
+        if (!isEnabled()) {
+            return true;
+        }
+        long now = System.nanoTime();
+        PortState state = stateFor(port, now);
+        boolean admitted = state.bucket == null || state.bucket.tryAcquire(now);
+        if (admitted && nodeRate > 0 && !nodeBucketFor(port.getNode(), now).tryAcquire(now)) {
+            // A busy neighbour exhausting the switch must not also use up
+            // this port's share
+            if (state.bucket != null) {
+                state.bucket.refund();
+            }
+            admitted = false;
+        }
+        if (admitted) {
+            return true;
+        }
+        long over = state.overLimit.incrementAndGet();
+        if (sampleRate > 0 && over % sampleRate == 0) {
+            state.sampled.incrementAndGet();
+            return true;
+        }
+        state.dropped.incrementAndGet();
+        return false;
+    }
+
+    public void removeNode(Node node) {
+        nodes.remove(node);
+        for (NodeConnector port : ports.keySet()) {
+            if (port.getNode().equals(node)) {
+                ports.remove(port);
+            }
+        }
+    }
+
+    public long getDroppedCount() {
+        long dropped = 0;
+        for (PortState state : ports.values()) {
+            dropped += state.dropped.get();
+        }
+        return dropped;
+    }
+
+    /**
+     * Per-port counters for every port that has exceeded its limit.
+     */
+    public List<PortDropStatistics> getDropStatistics() {
+        List<PortDropStatistics> result = new ArrayList<PortDropStatistics>();
+        for (Map.Entry<NodeConnector, PortState> entry : ports.entrySet()) {
+            PortState state = entry.getValue();
+            if (state.overLimit.get() > 0) {
+                result.add(new PortDropStatistics(entry.getKey().toString(),
+                        state.dropped.get(), state.sampled.get()));
+            }
+        }
+        return result;
+    }
+
+    private PortState stateFor(NodeConnector port, long now) {
+        PortState state = ports.get(port);
+        if (state == null) {
+            PortState created = new PortState(
+                    (portRate > 0) ? new TokenBucket(portRate, portBurst, now) : null);
+            state = ports.putIfAbsent(port, created);
+            if (state == null) {
+                state = created;
+            }
+        }
+        return state;
+    }
+
+    private TokenBucket nodeBucketFor(Node node, long now) {
+        TokenBucket bucket = nodes.get(node);
+        if (bucket == null) {
+            TokenBucket created = new TokenBucket(nodeRate, nodeBurst, now);
+            bucket = nodes.putIfAbsent(node, created);
+            if (bucket == null) {
+                bucket = created;
+            }
+        }
+        return bucket;
+    }
+
+    private static final class PortState {
+        final TokenBucket bucket;
+        final AtomicLong overLimit = new AtomicLong();
+        final AtomicLong dropped = new AtomicLong();
+        final AtomicLong sampled = new AtomicLong();
+
+        PortState(TokenBucket bucket) {
+            this.bucket = bucket;
+        }
+    }
+}
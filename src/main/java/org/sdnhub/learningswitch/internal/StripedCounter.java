@@ -0,0 +1,45 @@
+package org.sdnhub.learningswitch.internal;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counter for hot paths. Increments land on one of several cache-line
+ * padded cells picked by thread, so concurrent writers rarely share a line;
+ * reads sum the cells and are only as consistent as a single pass allows.
+ */
+public final class StripedCounter {
+    private static final int PAD = 8; // longs per 64-byte cache line
+    private static final int STRIPES = stripes();
+
+    private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PAD);
+
+    public void increment() {
+        cells.getAndIncrement(index());
+    }
+
+    public void add(long delta) {
+        cells.getAndAdd(index(), delta);
+    }
+
+    public long sum() {
+        long sum = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            sum += cells.get(i * PAD);
+        }
+        return sum;
+    }
+
+    private static int index() {
+        int h = (int) Thread.currentThread().getId() * 0x9e3779b9;
+        return ((h >>> 16) & (STRIPES - 1)) * PAD;
+    }
+
+    private static int stripes() {
+        int target = Runtime.getRuntime().availableProcessors() * 2;
+        int stripes = 1;
+        while (stripes < target && stripes < 64) {
+            stripes <<= 1;
+        }
+        return stripes;
+    }
+}
@@ -0,0 +1,53 @@
+package org.sdnhub.learningswitch.internal;
+
+import org.opendaylight.controller.sal.core.Node;
+import org.opendaylight.controller.sal.core.NodeConnector;
+import org.sdnhub.learningswitch.LearningSwitchEvent;
+
+/**
+ * Event as published on the packet-in path: plain references and the raw
+ * MAC value, turned into strings only when a consumer reads it.
+ */
+final class SwitchEvent {
+    static final String LEARNED = "learned";
+    static final String MOVED = "moved";
+    static final String AGED = "aged";
+    static final String EVICTED = "evicted";
+    static final String MODE = "mode";
+
+    final String type;
+    final long time;
+    final long mac;
+    final Node node;
+    final NodeConnector port;
+    final NodeConnector previous;
+    final String mode;
+
+    private SwitchEvent(String type, long mac, Node node, NodeConnector port,
+            NodeConnector previous, String mode) {
+        this.type = type;
+        this.time = System.currentTimeMillis();
+        this.mac = mac;
+        this.node = node;
+        this.port = port;
+        this.previous = previous;
+        this.mode = mode;
+    }
+
+    static SwitchEvent mac(String type, long mac, NodeConnector port, NodeConnector previous) {
+        return new SwitchEvent(type, mac, port.getNode(), port, previous, null);
+    }
+
+    static SwitchEvent mode(String mode) {
+        return new SwitchEvent(MODE, -1L, null, null, null, mode);
+    }
+
+    LearningSwitchEvent toEvent() {
+        return new LearningSwitchEvent(type, time,
+                (mac < 0) ? null : EthernetHeader.formatMAC(mac),
+                (node == null) ? null : node.toString(),
+                (port == null) ? null : port.toString(),
+                (previous == null) ? null : previous.toString(),
+                mode);
+    }
+}
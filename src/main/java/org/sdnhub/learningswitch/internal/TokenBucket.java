@@ -0,0 +1,46 @@
+package org.sdnhub.learningswitch.internal;
+
+/**
+ * Classic token bucket: refills at a fixed rate up to a burst size, each
+ * admitted event takes one token.
+ */
+public class TokenBucket {
+    private final double ratePerNano;
+    private final double burst;
+    private double tokens;
+    private long lastRefill;
+
+    /**
+     * @param ratePerSecond
+     *            sustained events per second
+     * @param burst
+     *            events that may be admitted back to back
+     */
+    public TokenBucket(long ratePerSecond, long burst, long nowNanos) {
+        this.ratePerNano = ratePerSecond / 1e9;
+        this.burst = Math.max(burst, 1);
+        this.tokens = this.burst;
+        this.lastRefill = nowNanos;
+    }
+
+    public synchronized boolean tryAcquire(long nowNanos) {
+        long elapsed = nowNanos - lastRefill;
+        if (elapsed > 0) {
+            tokens = Math.min(burst, tokens + elapsed * ratePerNano);
+            lastRefill = nowNanos;
+        }
+        if (tokens >= 1.0) {
+            tokens -= 1.0;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Gives back a token taken by {@link #tryAcquire} for an event that was
+     * not admitted after all.
+     */
+    public synchronized void refund() {
+        tokens = Math.min(burst, tokens + 1.0);
+    }
+}
@@ -0,0 +1,120 @@
+package org.sdnhub.learningswitch.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opendaylight.controller.sal.core.Node;
+import org.opendaylight.controller.sal.core.NodeConnector;
+import org.opendaylight.controller.switchmanager.ISwitchManager;
+
+/**
+ * Up ports of each switch as an immutable array, so flooding is a plain
+ * array walk. Arrays are loaded from the switch manager the first time a
+ * switch floods and replaced whenever an inventory event touches one of its
+ * ports. An optional filter drops ports that must never be flooded to.
+ */
+public class UpPortCache {
+    private static final NodeConnector[] NO_PORTS = new NodeConnector[0];
+
+    public interface PortFilter {
+        boolean accept(NodeConnector port);
+    }
+
+    private final ConcurrentMap<Node, NodeConnector[]> ports =
+            new ConcurrentHashMap<Node, NodeConnector[]>();
+    private final PortFilter filter;
+    // Bumped by clear(), so an array computed against the old filter
+    // verdicts is never left published
+    private final AtomicLong generation = new AtomicLong();
+
+    public UpPortCache() {
+        this(null);
+    }
+
+    public UpPortCache(PortFilter filter) {
+        this.filter = filter;
+    }
+
+    /**
+     * Returns the up ports of the node. The array must not be modified.
+     */
+    public NodeConnector[] get(Node node, ISwitchManager switchManager) {
+        NodeConnector[] up = ports.get(node);
+        if (up == null) {
+            up = refresh(node, switchManager);
+        }
+        return up;
+    }
+
+    /**
+     * Reloads the node's up ports from the switch manager.
+     */
+    public NodeConnector[] refresh(Node node, ISwitchManager switchManager) {
+        if (switchManager == null) {
+            return NO_PORTS;
+        }
+        long observed = generation.get();
+        Set<NodeConnector> up = switchManager.getUpNodeConnectors(node);
+        NodeConnector[] array = NO_PORTS;
+        if (up != null && !up.isEmpty()) {
+            List<NodeConnector> accepted = new ArrayList<NodeConnector>(up.size());
+            for (NodeConnector port : up) {
+                if (filter == null || filter.accept(port)) {
+                    accepted.add(port);
+                }
+            }
+            array = accepted.toArray(new NodeConnector[accepted.size()]);
+        }
+        ports.put(node, array);
+        if (generation.get() != observed) {
+            // clear() ran while this was computed; its own clear may already
+            // be past, so take the stale array back out
+            ports.remove(node, array);
+        }
+        return array;
+    }
+
+    /**
+     * Takes a port out of its node's array without consulting the switch
+     * manager.
+     */
+    public void portDown(NodeConnector port) {
+        Node node = port.getNode();
+        while (true) {
+            NodeConnector[] current = ports.get(node);
+            if (current == null) {
+                return;
+            }
+            List<NodeConnector> remaining = new ArrayList<NodeConnector>(current.length);
+            for (NodeConnector p : current) {
+                if (!p.equals(port)) {
+                    remaining.add(p);
+                }
+            }
+            if (remaining.size() == current.length) {
+                return;
+            }
+            NodeConnector[] updated = remaining.toArray(new NodeConnector[remaining.size()]);
+            if (ports.replace(node, current, updated)) {
+                return;
+            }
+        }
+    }
+
+    public void removeNode(Node node) {
+        ports.remove(node);
+    }
+
+    /**
+     * Forgets every array so they are reloaded, e.g. after the filter's
+     * verdicts changed.
+     */
+    public void clear() {
+        generation.incrementAndGet();
+        ports.clear();
+    }
+}
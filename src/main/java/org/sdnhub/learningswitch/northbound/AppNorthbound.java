@@ -1,39 +1,66 @@
 
 package org.sdnhub.learningswitch.northbound;
 
+import org.sdnhub.learningswitch.AuthorizedHosts;
+import org.sdnhub.learningswitch.BatchItemStatus;
 import org.sdnhub.learningswitch.ILearningSwitch;
+import org.sdnhub.learningswitch.LearningSwitchBatch;
+import org.sdnhub.learningswitch.LearningSwitchBatchResult;
 import org.sdnhub.learningswitch.LearningSwitchData;
+import org.sdnhub.learningswitch.LearningSwitchEvents;
+import org.sdnhub.learningswitch.LearningSwitchStatistics;
+import org.sdnhub.learningswitch.MacTableEntry;
+import org.sdnhub.learningswitch.MacTablePage;
+import org.sdnhub.learningswitch.MacTableStatistics;
+import org.sdnhub.learningswitch.PacketTraces;
+import org.sdnhub.learningswitch.PortDropStatistics;
 import org.sdnhub.learningswitch.internal.LearningSwitch;
 import org.codehaus.enunciate.jaxrs.StatusCodes;
 import org.codehaus.enunciate.jaxrs.TypeHint;
-import org.opendaylight.controller.sal.utils.ServiceHelper;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URI;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.GenericEntity;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.SecurityContext;
+import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.UriInfo;
+import javax.ws.rs.core.Variant;
 
 import org.codehaus.enunciate.jaxrs.ResponseCode;
 import org.opendaylight.controller.northbound.commons.RestMessages;
 import org.opendaylight.controller.northbound.commons.exception.ServiceUnavailableException;
 import org.opendaylight.controller.northbound.commons.exception.UnauthorizedException;
-import org.opendaylight.controller.northbound.commons.utils.NorthboundUtils;
 import org.opendaylight.controller.sal.authorization.Privilege;
 import org.opendaylight.controller.sal.utils.Status;
+import org.opendaylight.controller.sal.utils.StatusCode;
 
 /**
  * Northbound REST API
@@ -51,8 +78,14 @@ import org.opendaylight.controller.sal.utils.Status;
  */
 @Path("/")
 public class AppNorthbound {
+    private static final long MAX_EVENT_WAIT = 60000L;
+    private static final int MAX_EVENT_BATCH = 10000;
+    private static final int MAX_TRACES = 10000;
+
     @Context
     private UriInfo _uriInfo;
+    @Context
+    private Request _request;
     private String username;
 
     @Context
@@ -65,6 +98,38 @@ public class AppNorthbound {
     protected String getUserName() {
         return username;
     }
+
+    /**
+     * Checks that the caller holds the privilege and returns the service in
+     * the default container, both through the cache shared by all requests.
+     */
+    private ILearningSwitch getLearningSwitch(Privilege privilege) {
+        authorize(privilege);
+        return available(NorthboundCache.getLearningSwitch(this));
+    }
+
+    /**
+     * Same as {@link #getLearningSwitch}, for the endpoints that have always
+     * looked the service up globally.
+     */
+    private ILearningSwitch getGlobalLearningSwitch(Privilege privilege) {
+        authorize(privilege);
+        return available(NorthboundCache.getGlobalLearningSwitch(this));
+    }
+
+    private void authorize(Privilege privilege) {
+        if (!NorthboundCache.isAuthorized(getUserName(), privilege, this)) {
+            throw new UnauthorizedException("User is not authorized to perform this operation");
+        }
+    }
+
+    private static ILearningSwitch available(ILearningSwitch simple) {
+        if (simple == null) {
+            throw new ServiceUnavailableException("Simple Service " + RestMessages.SERVICEUNAVAILABLE.toString());
+        }
+        return simple;
+    }
+
     /**
     *
     * Switch-hub toggle GET REST API call
@@ -90,14 +155,7 @@ public class AppNorthbound {
    @Produces({ MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML })
    @StatusCodes()   
    public String toggleSwitchHub() {
-       if (!NorthboundUtils.isAuthorized(getUserName(), "default", Privilege.WRITE, this)) {
-           throw new UnauthorizedException("User is not authorized to perform this operation");
-       }
-       //LearningSwitch simple = (LearningSwitch) ServiceHelper.getInstance(LearningSwitch.class, "default", this);
-       ILearningSwitch simple = (ILearningSwitch) ServiceHelper.getInstance(ILearningSwitch.class, "default", this);
-       if (simple == null) {
-           throw new ServiceUnavailableException("Simple Service " + RestMessages.SERVICEUNAVAILABLE.toString());
-       }
+       ILearningSwitch simple = getLearningSwitch(Privilege.WRITE);
 
        return simple.toggleSwitchHub();
    }
@@ -128,14 +186,7 @@ public class AppNorthbound {
    @StatusCodes()   
    public String echoTest(@PathParam("input") String input) {
    
-       if (!NorthboundUtils.isAuthorized(getUserName(), "default", Privilege.WRITE, this)) {
-           throw new UnauthorizedException("User is not authorized to perform this operation");
-       }
-       //LearningSwitch simple = (LearningSwitch) ServiceHelper.getInstance(LearningSwitch.class, "default", this);
-       ILearningSwitch simple = (ILearningSwitch) ServiceHelper.getInstance(ILearningSwitch.class, "default", this);
-       if (simple == null) {
-           throw new ServiceUnavailableException("Simple Service " + RestMessages.SERVICEUNAVAILABLE.toString());
-       }
+       ILearningSwitch simple = getLearningSwitch(Privilege.WRITE);
 
        return "<xml><output>" + simple.echo( input ) +"</output></xml>";
    }
@@ -144,43 +195,535 @@ public class AppNorthbound {
     
     /**
      *
-     * Sample GET REST API call
+     * Event stream GET REST API call (long-poll)
      *
-     * @return A response string
+     * Returns MAC learned, moved, aged and evicted events and mode toggles.
+     * The request is held until at least one event is available or the
+     * timeout passes; events arriving close together come back as one batch.
+     * Pass the returned next value as the cursor of the following request;
+     * missed counts events that were overwritten before this client read
+     * them.
+     *
+     * @param cursor
+     *            next event wanted, -1 to start from now
+     * @param timeout
+     *            milliseconds to wait for events, at most 60000
+     * @param max
+     *            maximum number of events in the batch
+     * @return A batch of events and the cursor to continue from
      *
      * <pre>
      * Example:
      *
      * Request URL:
-     * http://localhost:8080/app/northbound/learningswitch
+     * http://localhost:8080/learningswitch/northbound/learningswitch/events?cursor=1200&amp;timeout=30000
      *
-     * Response body in XML:
-     * &lt;?xml version="1.0" encoding="UTF-8" standalone="yes"?&gt;
-     * Sample Northbound API
+     * Response body in JSON:
+     * {"next":"1202","missed":"0",
+     *  "events":[{"type":"learned","time":"1400000000000","mac":"00:00:00:00:00:01",
+     *             "node":"OF|00:00:00:00:00:00:00:01","nodeConnector":"OF|1@OF|00:00:00:00:00:00:00:01"},
+     *            {"type":"mode","time":"1400000000100","mode":"switch"}]}
+     * </pre>
+     */
+    @Path("/learningswitch/events")
+    @GET
+    @Produces({ MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML })
+    @TypeHint(LearningSwitchEvents.class)
+    @StatusCodes()
+    public LearningSwitchEvents getEvents(@QueryParam("cursor") @DefaultValue("-1") long cursor,
+            @QueryParam("timeout") @DefaultValue("30000") long timeout,
+            @QueryParam("max") @DefaultValue("1000") int max) {
+        ILearningSwitch simple = getLearningSwitch(Privilege.READ);
+
+        return simple.getEvents(cursor, Math.max(0, Math.min(timeout, MAX_EVENT_WAIT)),
+                Math.max(1, Math.min(max, MAX_EVENT_BATCH)));
+    }
+
+    /**
+     *
+     * Packet-in statistics GET REST API call
+     *
+     * @return Hot-path counters and latency histograms
+     *
+     * <pre>
+     * Example:
+     *
+     * Request URL:
+     * http://localhost:8080/learningswitch/northbound/learningswitch/stats
      *
      * Response body in JSON:
-     * Sample Northbound API
+     * {"counters":[{"name":"packetIns","value":"1024"},...],
+     *  "latencies":[{"name":"packetIn","count":"1024","p50Nanos":"2048",...}]}
      * </pre>
      */
-    @Path("/learningswitch")
+    @Path("/learningswitch/stats")
     @GET
     @Produces({ MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML })
+    @TypeHint(LearningSwitchStatistics.class)
     @StatusCodes()
-    public List<LearningSwitchData> getData() {
-        if (!NorthboundUtils.isAuthorized(getUserName(), "default", Privilege.WRITE, this)) {
-            throw new UnauthorizedException("User is not authorized to perform this operation");
+    public LearningSwitchStatistics getStatistics() {
+        ILearningSwitch simple = getLearningSwitch(Privilege.READ);
+
+        return simple.getStatistics();
+    }
+
+    /**
+     *
+     * Packet-in traces GET REST API call
+     *
+     * Returns the most recent sampled packet-ins that took at least the
+     * configured threshold, newest first, with the time spent in each stage
+     * of the forwarding path. Sampling is off unless the
+     * learningswitch.trace.sampleRate property is set.
+     *
+     * @param max
+     *            maximum number of traces to return
+     * @return Sampling settings, counts and the slow traces
+     *
+     * <pre>
+     * Example:
+     *
+     * Request URL:
+     * http://localhost:8080/learningswitch/northbound/learningswitch/traces?max=10
+     *
+     * Response body in JSON:
+     * {"sampleRate":"100","slowThresholdNanos":"100000","sampled":"5120","kept":"3",
+     *  "traces":[{"time":"1400000000000","nodeConnector":"OF|1@OF|00:00:00:00:00:00:00:01",
+     *             "src":"00:00:00:00:00:01","dst":"00:00:00:00:00:02","result":"CONSUME",
+     *             "totalNanos":"250000",
+     *             "stages":[{"name":"decode","nanos":"900"},{"name":"learn","nanos":"1200"},
+     *                       {"name":"admit","nanos":"100"},{"name":"lookup","nanos":"300"},
+     *                       {"name":"program","nanos":"247000"}]}]}
+     * </pre>
+     */
+    @Path("/learningswitch/traces")
+    @GET
+    @Produces({ MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML })
+    @TypeHint(PacketTraces.class)
+    @StatusCodes()
+    public PacketTraces getPacketTraces(@QueryParam("max") @DefaultValue("100") int max) {
+        ILearningSwitch simple = getLearningSwitch(Privilege.READ);
+
+        return simple.getPacketTraces(Math.max(0, Math.min(max, MAX_TRACES)));
+    }
+
+    /**
+     *
+     * MAC table statistics GET REST API call
+     *
+     * @return Number of learned MACs and how many were aged out or evicted
+     *
+     * <pre>
+     * Example:
+     *
+     * Request URL:
+     * http://localhost:8080/learningswitch/northbound/learningswitch/mactable/statistics
+     *
+     * Response body in JSON:
+     * {"entries":"42","aged":"7","evicted":"0"}
+     * </pre>
+     */
+    @Path("/learningswitch/mactable/statistics")
+    @GET
+    @Produces({ MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML })
+    @TypeHint(MacTableStatistics.class)
+    @StatusCodes()
+    public MacTableStatistics getMacTableStatistics() {
+        ILearningSwitch simple = getLearningSwitch(Privilege.READ);
+
+        return simple.getMacTableStatistics();
+    }
+
+    /**
+     *
+     * MAC table GET REST API call
+     *
+     * Lists learned MACs from a point-in-time view of the table, ordered by
+     * switch and MAC. The first request takes the view; pass its snapshot
+     * id and the returned next cursor to read the following page of the same
+     * view. Views expire a minute after their last use.
+     *
+     * @param snapshot
+     *            view to read, 0 to take a new one
+     * @param node
+     *            only list MACs learned on this switch
+     * @param nodeConnector
+     *            only list MACs learned on this port
+     * @param cursor
+     *            position to resume from
+     * @param limit
+     *            page size, at most 10000
+     * @return One page of MAC table entries
+     *
+     * <pre>
+     * Example:
+     *
+     * Request URL:
+     * http://localhost:8080/learningswitch/northbound/learningswitch/mactable?node=OF|00:00:00:00:00:00:00:01&amp;limit=2
+     *
+     * Response body in JSON:
+     * {"snapshot":"3","takenAt":"1400000000000","total":"42","next":"2",
+     *  "entries":[{"mac":"00:00:00:00:00:01","node":"OF|00:00:00:00:00:00:00:01",
+     *              "nodeConnector":"OF|1@OF|00:00:00:00:00:00:00:01","lastSeen":"1399999990000"},...]}
+     * </pre>
+     */
+    @Path("/learningswitch/mactable")
+    @GET
+    @Produces({ MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML })
+    @TypeHint(MacTablePage.class)
+    @StatusCodes({ @ResponseCode(code = 200, condition = "Operation successful"),
+        @ResponseCode(code = 400, condition = "Invalid node, node connector or cursor"),
+        @ResponseCode(code = 401, condition = "User not authorized to perform this operation"),
+        @ResponseCode(code = 404, condition = "Snapshot expired"),
+        @ResponseCode(code = 503, condition = "One or more of service is unavailable")})
+    public Response getMacTable(@QueryParam("snapshot") @DefaultValue("0") long snapshot,
+            @QueryParam("node") String node,
+            @QueryParam("nodeConnector") String nodeConnector,
+            @QueryParam("cursor") @DefaultValue("0") int cursor,
+            @QueryParam("limit") @DefaultValue("0") int limit) {
+        ILearningSwitch simple = getLearningSwitch(Privilege.READ);
+
+        if (cursor < 0 || limit < 0) {
+            return Response.status(Response.Status.BAD_REQUEST).entity("Invalid cursor or limit").build();
         }
-        //LearningSwitch simple = (LearningSwitch) ServiceHelper.getInstance(LearningSwitch.class, "default", this);
-        ILearningSwitch simple = (ILearningSwitch) ServiceHelper.getInstance(ILearningSwitch.class, "default", this);
-        if (simple == null) {
-            throw new ServiceUnavailableException("Simple Service " + RestMessages.SERVICEUNAVAILABLE.toString());
+        MacTablePage page;
+        try {
+            page = simple.getMacTableEntries(snapshot, node, nodeConnector, cursor, limit);
+        } catch (IllegalArgumentException e) {
+            return Response.status(Response.Status.BAD_REQUEST).entity(e.getMessage()).build();
+        }
+        if (page == null) {
+            return Response.status(Response.Status.NOT_FOUND)
+                    .entity("Snapshot " + snapshot + " has expired").build();
         }
+        return Response.ok(page).build();
+    }
+
+    /**
+     *
+     * MAC lookup GET REST API call
+     *
+     * @return Where the MAC is currently learned, one entry per switch
+     *
+     * <pre>
+     * Example:
+     *
+     * Request URL:
+     * http://localhost:8080/learningswitch/northbound/learningswitch/mactable/00:00:00:00:00:01
+     *
+     * Response body in JSON:
+     * [{"mac":"00:00:00:00:00:01","node":"OF|00:00:00:00:00:00:00:01",
+     *   "nodeConnector":"OF|1@OF|00:00:00:00:00:00:00:01","lastSeen":"1399999990000"}]
+     * </pre>
+     */
+    @Path("/learningswitch/mactable/{mac}")
+    @GET
+    @Produces({ MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML })
+    @StatusCodes({ @ResponseCode(code = 200, condition = "Operation successful"),
+        @ResponseCode(code = 400, condition = "Invalid MAC address"),
+        @ResponseCode(code = 401, condition = "User not authorized to perform this operation"),
+        @ResponseCode(code = 503, condition = "One or more of service is unavailable")})
+    public Response lookupMac(@PathParam("mac") String mac) {
+        ILearningSwitch simple = getLearningSwitch(Privilege.READ);
 
-        Map<UUID, LearningSwitchData> sDataMap = simple.readData();
-        if (sDataMap != null) {
-            return new ArrayList<LearningSwitchData>(sDataMap.values());
+        List<MacTableEntry> entries;
+        try {
+            entries = simple.lookupMac(mac);
+        } catch (IllegalArgumentException e) {
+            return Response.status(Response.Status.BAD_REQUEST).entity(e.getMessage()).build();
         }
-        return new ArrayList<LearningSwitchData>();
+        return Response.ok(new GenericEntity<List<MacTableEntry>>(entries) {}).build();
+    }
+
+    /**
+     *
+     * Storm control GET REST API call
+     *
+     * @return Flood drop counters of every port that exceeded its rate limit
+     *
+     * <pre>
+     * Example:
+     *
+     * Request URL:
+     * http://localhost:8080/learningswitch/northbound/learningswitch/stormcontrol
+     *
+     * Response body in JSON:
+     * [{"nodeConnector":"OF|2@OF|00:00:00:00:00:00:00:01","dropped":"1200","sampled":"0"}]
+     * </pre>
+     */
+    @Path("/learningswitch/stormcontrol")
+    @GET
+    @Produces({ MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML })
+    @StatusCodes()
+    public List<PortDropStatistics> getFloodDropStatistics() {
+        ILearningSwitch simple = getLearningSwitch(Privilege.READ);
+
+        return simple.getFloodDropStatistics();
+    }
+
+    /**
+     *
+     * Authorized hosts GET REST API call
+     *
+     * @return MAC addresses of the hosts admitted past the captive portal
+     *
+     * <pre>
+     * Example:
+     *
+     * Request URL:
+     * http://localhost:8080/learningswitch/northbound/learningswitch/admission
+     *
+     * Response body in JSON:
+     * {"hosts":["00:00:00:00:00:01","00:00:00:00:00:02"]}
+     * </pre>
+     */
+    @Path("/learningswitch/admission")
+    @GET
+    @Produces({ MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML })
+    @TypeHint(AuthorizedHosts.class)
+    @StatusCodes()
+    public AuthorizedHosts getAuthorizedHosts() {
+        ILearningSwitch simple = getLearningSwitch(Privilege.READ);
+
+        return new AuthorizedHosts(simple.getAuthorizedHosts());
+    }
+
+    /**
+     *
+     * Host authorization PUT REST API call, installs the host's allow flows
+     *
+     * <pre>
+     * Example:
+     *
+     * Request URL:
+     * http://localhost:8080/learningswitch/northbound/learningswitch/admission/00:00:00:00:00:01
+     * </pre>
+     */
+    @Path("/learningswitch/admission/{mac}")
+    @PUT
+    @StatusCodes({ @ResponseCode(code = 200, condition = "Host authorized"),
+        @ResponseCode(code = 400, condition = "Invalid MAC address"),
+        @ResponseCode(code = 401, condition = "User not authorized to perform this operation"),
+        @ResponseCode(code = 409, condition = "Host already authorized"),
+        @ResponseCode(code = 503, condition = "One or more of service is unavailable")})
+    public Response authorizeHost(@PathParam("mac") String mac) {
+        ILearningSwitch simple = getLearningSwitch(Privilege.WRITE);
+
+        return toResponse(simple.authorizeHost(mac));
+    }
+
+    /**
+     *
+     * Host authorization DELETE REST API call, removes the host's flows
+     *
+     * <pre>
+     * Example:
+     *
+     * Request URL:
+     * http://localhost:8080/learningswitch/northbound/learningswitch/admission/00:00:00:00:00:01
+     * </pre>
+     */
+    @Path("/learningswitch/admission/{mac}")
+    @DELETE
+    @StatusCodes({ @ResponseCode(code = 200, condition = "Host revoked"),
+        @ResponseCode(code = 400, condition = "Invalid MAC address"),
+        @ResponseCode(code = 401, condition = "User not authorized to perform this operation"),
+        @ResponseCode(code = 404, condition = "Host not authorized"),
+        @ResponseCode(code = 503, condition = "One or more of service is unavailable")})
+    public Response revokeHost(@PathParam("mac") String mac) {
+        ILearningSwitch simple = getLearningSwitch(Privilege.WRITE);
+
+        return toResponse(simple.revokeHost(mac));
+    }
+
+    private static Response toResponse(Status status) {
+        if (status.isSuccess()) {
+            return Response.status(Response.Status.OK).build();
+        }
+        switch (status.getCode()) {
+        case BADREQUEST:
+            return Response.status(Response.Status.BAD_REQUEST).entity(status.getDescription()).build();
+        case CONFLICT:
+            return Response.status(Response.Status.CONFLICT).entity(status.getDescription()).build();
+        case NOTFOUND:
+            return Response.status(Response.Status.NOT_FOUND).entity(status.getDescription()).build();
+        default:
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    /**
+     *
+     * Collection GET REST API call
+     *
+     * Entries come back in uuid order. With a limit, a page holds at most
+     * that many entries and the next page starts after the uuid passed as
+     * cursor, i.e. the last uuid of the previous page; a Link header with
+     * rel="next" is set while more entries remain. With stream=true and JSON
+     * negotiated the array is written entry by entry as the map is walked
+     * instead of being built up first; XML is always built up first. Every response carries an ETag; a request whose
+     * If-None-Match still matches gets 304 without any serialization.
+     *
+     * @param limit
+     *            maximum number of entries, 0 for all
+     * @param cursor
+     *            uuid to resume after
+     * @param stream
+     *            write JSON straight from the map, if JSON is negotiated
+     * @return The entries of the requested page
+     *
+     * <pre>
+     * Example:
+     *
+     * Request URL:
+     * http://localhost:8080/app/northbound/learningswitch?limit=100&amp;cursor=3f2a...
+     *
+     * Response body in JSON:
+     * [{"uuid":"4c1e...","foo":"a","bar":"b"},...]
+     * </pre>
+     */
+    @Path("/learningswitch")
+    @GET
+    @Produces({ MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML })
+    @TypeHint(LearningSwitchData.class)
+    @StatusCodes({ @ResponseCode(code = 200, condition = "Operation successful"),
+        @ResponseCode(code = 304, condition = "Collection unchanged since the given ETag"),
+        @ResponseCode(code = 400, condition = "Invalid limit or cursor"),
+        @ResponseCode(code = 401, condition = "User not authorized to perform this operation"),
+        @ResponseCode(code = 503, condition = "One or more of service is unavailable")})
+    public Response getData(@QueryParam("limit") @DefaultValue("0") final int limit,
+            @QueryParam("cursor") String cursor,
+            @QueryParam("stream") @DefaultValue("false") boolean stream) {
+        ILearningSwitch simple = getLearningSwitch(Privilege.WRITE);
+        if (limit < 0) {
+            return Response.status(Response.Status.BAD_REQUEST).entity("Invalid limit " + limit).build();
+        }
+        UUID after = null;
+        if (cursor != null && !cursor.isEmpty()) {
+            try {
+                after = UUID.fromString(cursor);
+            } catch (IllegalArgumentException e) {
+                return Response.status(Response.Status.BAD_REQUEST).entity("Invalid cursor " + cursor).build();
+            }
+        }
+
+        // Read the version before the entries: a concurrent change can only
+        // make the tag older than the body, which costs a refetch, never a
+        // stale 304
+        EntityTag tag = new EntityTag(Long.toHexString(simple.getDataVersion()));
+        Response.ResponseBuilder unchanged = _request.evaluatePreconditions(tag);
+        if (unchanged != null) {
+            return unchanged.tag(tag).build();
+        }
+
+        final Map<UUID, LearningSwitchData> view = simple.readDataAfter(after);
+        if (stream && prefersJson()) {
+            StreamingOutput output = new StreamingOutput() {
+                @Override
+                public void write(OutputStream out) throws IOException {
+                    Writer writer = new BufferedWriter(new OutputStreamWriter(out, "UTF-8"));
+                    writer.write('[');
+                    int count = 0;
+                    for (LearningSwitchData datum : view.values()) {
+                        if (limit > 0 && count == limit) {
+                            break;
+                        }
+                        if (count++ > 0) {
+                            writer.write(',');
+                        }
+                        writeJson(writer, datum);
+                    }
+                    writer.write(']');
+                    writer.flush();
+                }
+            };
+            return Response.ok(output, MediaType.APPLICATION_JSON).tag(tag).build();
+        }
+
+        List<LearningSwitchData> page = new ArrayList<LearningSwitchData>(
+                (limit > 0) ? limit : Math.min(view.size(), 1024));
+        UUID last = null;
+        boolean more = false;
+        for (Map.Entry<UUID, LearningSwitchData> entry : view.entrySet()) {
+            if (limit > 0 && page.size() == limit) {
+                more = true;
+                break;
+            }
+            page.add(entry.getValue());
+            last = entry.getKey();
+        }
+        Response.ResponseBuilder builder = Response.ok(
+                new GenericEntity<List<LearningSwitchData>>(page) {}).tag(tag);
+        if (more) {
+            URI next = _uriInfo.getRequestUriBuilder().replaceQueryParam("cursor", last.toString()).build();
+            builder.header("Link", "<" + next + ">; rel=\"next\"");
+        }
+        return builder.build();
+    }
+
+    /**
+     * True if JSON is what content negotiation picks for this request, the
+     * only type the streaming writer produces.
+     */
+    private boolean prefersJson() {
+        List<Variant> variants = Variant.mediaTypes(MediaType.APPLICATION_JSON_TYPE,
+                MediaType.APPLICATION_XML_TYPE).add().build();
+        Variant variant = _request.selectVariant(variants);
+        return variant != null && MediaType.APPLICATION_JSON_TYPE.equals(variant.getMediaType());
+    }
+
+    private static void writeJson(Writer writer, LearningSwitchData datum) throws IOException {
+        writer.write('{');
+        boolean first = writeJsonField(writer, "uuid", datum.getUuid(), true);
+        first = writeJsonField(writer, "foo", datum.getFoo(), first);
+        writeJsonField(writer, "bar", datum.getBar(), first);
+        writer.write('}');
+    }
+
+    /**
+     * Writes "name":"value" unless the value is null.
+     *
+     * @return true while nothing has been written to the object yet
+     */
+    private static boolean writeJsonField(Writer writer, String name, String value, boolean first)
+            throws IOException {
+        if (value == null) {
+            return first;
+        }
+        if (!first) {
+            writer.write(',');
+        }
+        writer.write('"');
+        writer.write(name);
+        writer.write("\":\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+            case '"':
+                writer.write("\\\"");
+                break;
+            case '\\':
+                writer.write("\\\\");
+                break;
+            case '\n':
+                writer.write("\\n");
+                break;
+            case '\r':
+                writer.write("\\r");
+                break;
+            case '\t':
+                writer.write("\\t");
+                break;
+            default:
+                if (c < 0x20) {
+                    writer.write(String.format("\\u%04x", (int) c));
+                } else {
+                    writer.write(c);
+                }
+            }
+        }
+        writer.write('"');
+        return false;
     }
 
     @Path("/learningswitch/{uuid}")
@@ -189,15 +732,125 @@ public class AppNorthbound {
     @TypeHint(LearningSwitchData.class)
     @StatusCodes()
     public LearningSwitchData getData(@PathParam("uuid") String uuid) {
-        if (!NorthboundUtils.isAuthorized(getUserName(), "default", Privilege.WRITE, this)) {
-            throw new UnauthorizedException("User is not authorized to perform this operation");
+        ILearningSwitch simple = getGlobalLearningSwitch(Privilege.WRITE);
+
+        return simple.readData(UUID.fromString(uuid));
+    }
+
+    /**
+     *
+     * Batch POST REST API call
+     *
+     * Applies the creates, then the updates, then the deletes of the batch
+     * under a single authorization check and service lookup. Items fail
+     * individually; the response lists one status per item in that order.
+     *
+     * @return Per-item statuses, with the assigned uuid for creates
+     *
+     * <pre>
+     * Example:
+     *
+     * Request URL:
+     * http://localhost:8080/app/northbound/learningswitch/batch
+     *
+     * Request body in JSON:
+     * {"create":[{"foo":"a","bar":"b"}],
+     *  "update":[{"uuid":"4c1e...","foo":"c","bar":"d"}],
+     *  "delete":["3f2a..."]}
+     *
+     * Response body in JSON:
+     * {"results":[{"operation":"create","uuid":"9b0d...","status":"SUCCESS"},...]}
+     * </pre>
+     */
+    @Path("/learningswitch/batch")
+    @POST
+    @Produces({ MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML })
+    @TypeHint(LearningSwitchBatchResult.class)
+    @StatusCodes({ @ResponseCode(code = 200, condition = "Batch applied, see the per-item statuses"),
+        @ResponseCode(code = 400, condition = "Missing batch"),
+        @ResponseCode(code = 401, condition = "User not authorized to perform this operation"),
+        @ResponseCode(code = 503, condition = "One or more of service is unavailable")})
+    @Consumes({ MediaType.APPLICATION_JSON})
+    public Response applyBatch(@TypeHint(LearningSwitchBatch.class) LearningSwitchBatch batch) {
+        ILearningSwitch simple = getGlobalLearningSwitch(Privilege.WRITE);
+        if (batch == null) {
+            return Response.status(Response.Status.BAD_REQUEST).entity("Missing batch").build();
         }
-        ILearningSwitch simple = (ILearningSwitch) ServiceHelper.getGlobalInstance(ILearningSwitch.class, this);
-        if (simple == null) {
-            throw new ServiceUnavailableException("Simple Service " + RestMessages.SERVICEUNAVAILABLE.toString());
+
+        List<BatchItemStatus> results = new ArrayList<BatchItemStatus>();
+        if (batch.getCreate() != null) {
+            List<UUID> created = simple.createData(batch.getCreate());
+            for (UUID uuid : created) {
+                results.add((uuid == null)
+                        ? new BatchItemStatus("create", null, StatusCode.BADREQUEST.toString(), "Missing data")
+                        : new BatchItemStatus("create", uuid.toString(), StatusCode.SUCCESS.toString(), null));
+            }
+        }
+        if (batch.getUpdate() != null) {
+            List<UUID> keys = new ArrayList<UUID>(batch.getUpdate().size());
+            Map<UUID, LearningSwitchData> updates = new LinkedHashMap<UUID, LearningSwitchData>();
+            for (LearningSwitchData datum : batch.getUpdate()) {
+                UUID uuid = parseUuid((datum == null) ? null : datum.getUuid());
+                keys.add(uuid);
+                if (uuid != null) {
+                    updates.put(uuid, datum);
+                }
+            }
+            Map<UUID, Status> applied = zip(updates.keySet(), simple.updateData(updates));
+            for (int i = 0; i < keys.size(); i++) {
+                LearningSwitchData datum = batch.getUpdate().get(i);
+                results.add(toItemStatus("update", (datum == null) ? null : datum.getUuid(),
+                        (keys.get(i) == null) ? null : applied.get(keys.get(i))));
+            }
+        }
+        if (batch.getDelete() != null) {
+            List<UUID> keys = new ArrayList<UUID>(batch.getDelete().size());
+            List<UUID> deletes = new ArrayList<UUID>(batch.getDelete().size());
+            for (String uuid : batch.getDelete()) {
+                UUID parsed = parseUuid(uuid);
+                keys.add(parsed);
+                if (parsed != null) {
+                    deletes.add(parsed);
+                }
+            }
+            Map<UUID, Status> applied = zip(deletes, simple.deleteData(deletes));
+            for (int i = 0; i < keys.size(); i++) {
+                results.add(toItemStatus("delete", batch.getDelete().get(i),
+                        (keys.get(i) == null) ? null : applied.get(keys.get(i))));
+            }
         }
+        return Response.ok(new LearningSwitchBatchResult(results)).build();
+    }
 
-        return simple.readData(UUID.fromString(uuid));
+    private static UUID parseUuid(String uuid) {
+        if (uuid == null) {
+            return null;
+        }
+        try {
+            return UUID.fromString(uuid);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static Map<UUID, Status> zip(Collection<UUID> keys, List<Status> statuses) {
+        Map<UUID, Status> zipped = new HashMap<UUID, Status>();
+        Iterator<Status> it = statuses.iterator();
+        for (UUID key : keys) {
+            zipped.put(key, it.next());
+        }
+        return zipped;
+    }
+
+    /**
+     * @param status
+     *            outcome of the item, null if its uuid did not parse
+     */
+    private static BatchItemStatus toItemStatus(String operation, String uuid, Status status) {
+        if (status == null) {
+            return new BatchItemStatus(operation, uuid, StatusCode.BADREQUEST.toString(), "Invalid uuid");
+        }
+        return new BatchItemStatus(operation, uuid, status.getCode().toString(), status.getDescription());
     }
 
     /**
@@ -228,13 +881,7 @@ public class AppNorthbound {
         @ResponseCode(code = 503, condition = "One or more of service is unavailable")})
     @Consumes({ MediaType.APPLICATION_JSON})
     public Response createData(@TypeHint(LearningSwitchData.class) LearningSwitchData data) {
-        if (!NorthboundUtils.isAuthorized(getUserName(), "default", Privilege.WRITE, this)) {
-            throw new UnauthorizedException("User is not authorized to perform this operation");
-        }
-        ILearningSwitch simple = (ILearningSwitch) ServiceHelper.getGlobalInstance(ILearningSwitch.class, this);
-        if (simple == null) {
-            throw new ServiceUnavailableException("Simple Service " + RestMessages.SERVICEUNAVAILABLE.toString());
-        }
+        ILearningSwitch simple = getGlobalLearningSwitch(Privilege.WRITE);
         
         UUID uuid = simple.createData(data);
         if (uuid == null) {
@@ -275,13 +922,7 @@ public class AppNorthbound {
        @ResponseCode(code = 503, condition = "One or more of service is unavailable")})
    @Consumes({ MediaType.APPLICATION_JSON})
    public Response updateData(@PathParam("uuid") String uuid, @TypeHint(LearningSwitchData.class) LearningSwitchData data) {
-       if (!NorthboundUtils.isAuthorized(getUserName(), "default", Privilege.WRITE, this)) {
-           throw new UnauthorizedException("User is not authorized to perform this operation");
-       }
-       ILearningSwitch simple = (ILearningSwitch) ServiceHelper.getGlobalInstance(ILearningSwitch.class, this);
-       if (simple == null) {
-           throw new ServiceUnavailableException("Simple Service " + RestMessages.SERVICEUNAVAILABLE.toString());
-       }
+       ILearningSwitch simple = getGlobalLearningSwitch(Privilege.WRITE);
        
        Status status = simple.updateData(UUID.fromString(uuid), data);
        if (!status.isSuccess()) {
@@ -318,13 +959,7 @@ public class AppNorthbound {
                  @ResponseCode(code = 503, condition = "One or more of service is unavailable")})
   @Consumes({ MediaType.APPLICATION_JSON})
   public Response updateData(@PathParam("uuid") String uuid) {
-      if (!NorthboundUtils.isAuthorized(getUserName(), "default", Privilege.WRITE, this)) {
-          throw new UnauthorizedException("User is not authorized to perform this operation");
-      }
-      ILearningSwitch simple = (ILearningSwitch) ServiceHelper.getGlobalInstance(ILearningSwitch.class, this);
-      if (simple == null) {
-          throw new ServiceUnavailableException("Simple Service " + RestMessages.SERVICEUNAVAILABLE.toString());
-      }
+      ILearningSwitch simple = getGlobalLearningSwitch(Privilege.WRITE);
       
       Status status = simple.deleteData(UUID.fromString(uuid));
       if (!status.isSuccess()) {
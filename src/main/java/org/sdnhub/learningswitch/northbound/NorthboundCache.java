@@ -0,0 +1,175 @@
+package org.sdnhub.learningswitch.northbound;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.opendaylight.controller.northbound.commons.utils.NorthboundUtils;
+import org.opendaylight.controller.sal.authorization.Privilege;
+import org.opendaylight.controller.sal.utils.ServiceHelper;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.InvalidSyntaxException;
+import org.osgi.framework.ServiceEvent;
+import org.osgi.framework.ServiceListener;
+import org.sdnhub.learningswitch.ILearningSwitch;
+import org.sdnhub.learningswitch.internal.LearningSwitchConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Lookups shared by every northbound request.
+ *
+ * Resources are created per request, so the ILearningSwitch references and
+ * authorization decisions are kept here instead. Each endpoint keeps the
+ * lookup it always had, in the default container or global, and each is
+ * cached separately. The references are dropped when an ILearningSwitch
+ * registration goes away; decisions expire after a short TTL so privilege
+ * changes still take effect quickly. The registry is only watched between
+ * {@link #open} and {@link #close}, called from the bundle activator;
+ * outside that window the service is looked up on every call.
+ */
+public final class NorthboundCache {
+    protected static final Logger logger = LoggerFactory.getLogger(NorthboundCache.class);
+
+    private static final String CONTAINER = "default";
+    private static final long DEFAULT_AUTH_TTL = 5000L;
+    private static final int MAX_DECISIONS = 1024;
+
+    private static final long authTtl =
+            LearningSwitchConfig.getLong("northbound.authCacheTtl", DEFAULT_AUTH_TTL);
+    private static final ConcurrentMap<String, Decision> decisions =
+            new ConcurrentHashMap<String, Decision>();
+
+    private static volatile ILearningSwitch containerSwitch;
+    private static volatile ILearningSwitch globalSwitch;
+    // Bumped whenever a registration goes away, so a lookup that raced with
+    // it is not cached
+    private static long generation;
+    // The context the listener is registered with, null when not watching
+    private static BundleContext context;
+
+    private static final ServiceListener listener = new ServiceListener() {
+        @Override
+        public void serviceChanged(ServiceEvent event) {
+            // New registrations don't make a cached reference stale
+            int type = event.getType();
+            if (type == ServiceEvent.UNREGISTERING || type == ServiceEvent.MODIFIED_ENDMATCH) {
+                dropServices();
+            }
+        }
+    };
+
+    private NorthboundCache() {
+    }
+
+    /**
+     * Starts caching service lookups, watching the registry through the
+     * bundle context.
+     */
+    public static synchronized void open(BundleContext bundleContext) {
+        if (context != null) {
+            return;
+        }
+        try {
+            bundleContext.addServiceListener(listener,
+                    "(objectClass=" + ILearningSwitch.class.getName() + ")");
+        } catch (InvalidSyntaxException e) {
+            logger.warn("Not caching the learning switch service", e);
+            return;
+        }
+        context = bundleContext;
+        generation++;
+    }
+
+    /**
+     * Stops watching the registry and forgets everything cached, so nothing
+     * outlives the bundle.
+     */
+    public static synchronized void close() {
+        if (context != null) {
+            try {
+                context.removeServiceListener(listener);
+            } catch (IllegalStateException e) {
+                // The context is already gone along with the bundle
+            }
+            context = null;
+        }
+        dropServices();
+        decisions.clear();
+    }
+
+    /**
+     * The service in the default container.
+     */
+    static ILearningSwitch getLearningSwitch(Object caller) {
+        return lookup(false, caller);
+    }
+
+    /**
+     * The service wherever it is registered.
+     */
+    static ILearningSwitch getGlobalLearningSwitch(Object caller) {
+        return lookup(true, caller);
+    }
+
+    private static ILearningSwitch lookup(boolean global, Object caller) {
+        ILearningSwitch cached = global ? globalSwitch : containerSwitch;
+        if (cached != null) {
+            return cached;
+        }
+        long observed;
+        boolean caching;
+        synchronized (NorthboundCache.class) {
+            observed = generation;
+            caching = context != null;
+        }
+        ILearningSwitch service = global
+                ? (ILearningSwitch) ServiceHelper.getGlobalInstance(ILearningSwitch.class, caller)
+                : (ILearningSwitch) ServiceHelper.getInstance(ILearningSwitch.class, CONTAINER, caller);
+        if (service != null && caching) {
+            synchronized (NorthboundCache.class) {
+                if (generation == observed && context != null) {
+                    if (global) {
+                        globalSwitch = service;
+                    } else {
+                        containerSwitch = service;
+                    }
+                }
+            }
+        }
+        return service;
+    }
+
+    static boolean isAuthorized(String userName, Privilege privilege, Object caller) {
+        if (userName == null || authTtl <= 0) {
+            return NorthboundUtils.isAuthorized(userName, CONTAINER, privilege, caller);
+        }
+        String key = userName + '|' + privilege;
+        long now = System.currentTimeMillis();
+        Decision decision = decisions.get(key);
+        if (decision != null && decision.expires > now) {
+            return decision.allowed;
+        }
+        boolean allowed = NorthboundUtils.isAuthorized(userName, CONTAINER, privilege, caller);
+        if (decisions.size() >= MAX_DECISIONS) {
+            decisions.clear();
+        }
+        decisions.put(key, new Decision(allowed, now + authTtl));
+        return allowed;
+    }
+
+    private static synchronized void dropServices() {
+        generation++;
+        containerSwitch = null;
+        globalSwitch = null;
+    }
+
+    private static final class Decision {
+        final boolean allowed;
+        final long expires;
+
+        Decision(boolean allowed, long expires) {
+            this.allowed = allowed;
+            this.expires = expires;
+        }
+    }
+}
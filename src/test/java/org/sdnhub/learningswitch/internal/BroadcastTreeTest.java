@@ -0,0 +1,140 @@
+package org.sdnhub.learningswitch.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opendaylight.controller.sal.core.ConstructionException;
+import org.opendaylight.controller.sal.core.Edge;
+import org.opendaylight.controller.sal.core.Node;
+import org.opendaylight.controller.sal.core.NodeConnector;
+import org.opendaylight.controller.sal.utils.NodeConnectorCreator;
+import org.opendaylight.controller.sal.utils.NodeCreator;
+
+/**
+ * Three switches in a triangle: s1:2-s2:1, s2:2-s3:1, s3:2-s1:3. Port 1 of
+ * s1 is an edge port.
+ */
+public class BroadcastTreeTest {
+    private Node s1;
+    private Node s2;
+    private Node s3;
+    private NodeConnector s1p1;
+    private Edge link12;
+    private Edge link23;
+    private Edge link31;
+
+    @Before
+    public void setUp() throws ConstructionException {
+        s1 = NodeCreator.createOFNode(1L);
+        s2 = NodeCreator.createOFNode(2L);
+        s3 = NodeCreator.createOFNode(3L);
+        s1p1 = port(s1, 1);
+        link12 = new Edge(port(s1, 2), port(s2, 1));
+        link23 = new Edge(port(s2, 2), port(s3, 1));
+        link31 = new Edge(port(s3, 2), port(s1, 3));
+    }
+
+    private static NodeConnector port(Node node, int id) {
+        return NodeConnectorCreator.createOFNodeConnector((short) id, node);
+    }
+
+    private static Edge reverse(Edge edge) throws ConstructionException {
+        return new Edge(edge.getHeadNodeConnector(), edge.getTailNodeConnector());
+    }
+
+    @Test
+    public void blocksOneLinkOfTriangle() {
+        BroadcastTree tree = new BroadcastTree();
+        assertFalse(tree.addEdge(link12));
+        assertFalse(tree.addEdge(link23));
+        assertTrue(tree.addEdge(link31));
+
+        assertEquals(2, tree.getBlockedPortCount());
+        assertTrue(tree.isBlocked(link31.getTailNodeConnector()));
+        assertTrue(tree.isBlocked(link31.getHeadNodeConnector()));
+        assertFalse(tree.isBlocked(link12.getTailNodeConnector()));
+        assertFalse(tree.isBlocked(s1p1));
+        assertTrue(tree.hasBlockedPort(s1));
+        assertFalse(tree.hasBlockedPort(s2));
+        assertEquals(Collections.singletonList(link31.getHeadNodeConnector()),
+                tree.getBlockedPorts(s1));
+    }
+
+    @Test
+    public void reverseDirectionIsTheSameLink() throws ConstructionException {
+        BroadcastTree tree = new BroadcastTree();
+        tree.addEdge(link12);
+        tree.addEdge(link23);
+        tree.addEdge(link31);
+
+        assertFalse(tree.addEdge(reverse(link12)));
+        assertFalse(tree.addEdge(reverse(link31)));
+        assertEquals(2, tree.getBlockedPortCount());
+    }
+
+    @Test
+    public void losingTreeLinkUnblocksTheSpareOne() {
+        BroadcastTree tree = new BroadcastTree();
+        tree.addEdge(link12);
+        tree.addEdge(link23);
+        tree.addEdge(link31);
+
+        assertTrue(tree.removeEdge(link12));
+        assertEquals(0, tree.getBlockedPortCount());
+        assertFalse(tree.isBlocked(link31.getTailNodeConnector()));
+    }
+
+    @Test
+    public void linkStaysUntilBothDirectionsAreLost() throws ConstructionException {
+        BroadcastTree tree = new BroadcastTree();
+        tree.addEdge(link12);
+        tree.addEdge(reverse(link12));
+        tree.addEdge(link23);
+        tree.addEdge(link31);
+
+        assertFalse(tree.removeEdge(reverse(link12)));
+        assertEquals(2, tree.getBlockedPortCount());
+        assertTrue(tree.isBlocked(link31.getTailNodeConnector()));
+
+        assertTrue(tree.removeEdge(link12));
+        assertEquals(0, tree.getBlockedPortCount());
+    }
+
+    @Test
+    public void losingBlockedLinkKeepsTree() {
+        BroadcastTree tree = new BroadcastTree();
+        tree.addEdge(link12);
+        tree.addEdge(link23);
+        tree.addEdge(link31);
+
+        assertTrue(tree.removeEdge(link31));
+        assertEquals(0, tree.getBlockedPortCount());
+        assertFalse(tree.removeEdge(link31));
+    }
+
+    @Test
+    public void resetBuildsTheSameTree() throws ConstructionException {
+        Set<Edge> edges = new HashSet<Edge>();
+        edges.add(link12);
+        edges.add(reverse(link12));
+        edges.add(link23);
+        edges.add(reverse(link23));
+        edges.add(link31);
+        edges.add(reverse(link31));
+
+        BroadcastTree tree = new BroadcastTree();
+        assertTrue(tree.reset(edges));
+        assertEquals(2, tree.getBlockedPortCount());
+        assertFalse(tree.reset(edges));
+
+        assertTrue(tree.reset(Collections.<Edge>emptySet()));
+        assertEquals(0, tree.getBlockedPortCount());
+    }
+}
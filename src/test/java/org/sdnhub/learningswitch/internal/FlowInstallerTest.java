@@ -0,0 +1,384 @@
+package org.sdnhub.learningswitch.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opendaylight.controller.sal.action.Action;
+import org.opendaylight.controller.sal.action.Output;
+import org.opendaylight.controller.sal.core.ConstructionException;
+import org.opendaylight.controller.sal.core.Node;
+import org.opendaylight.controller.sal.core.NodeConnector;
+import org.opendaylight.controller.sal.flowprogrammer.Flow;
+import org.opendaylight.controller.sal.flowprogrammer.IFlowProgrammerService;
+import org.opendaylight.controller.sal.match.Match;
+import org.opendaylight.controller.sal.match.MatchField;
+import org.opendaylight.controller.sal.match.MatchType;
+import org.opendaylight.controller.sal.packet.IDataPacketService;
+import org.opendaylight.controller.sal.packet.Packet;
+import org.opendaylight.controller.sal.packet.RawPacket;
+import org.opendaylight.controller.sal.utils.NodeConnectorCreator;
+import org.opendaylight.controller.sal.utils.NodeCreator;
+import org.opendaylight.controller.sal.utils.Status;
+import org.opendaylight.controller.sal.utils.StatusCode;
+
+public class FlowInstallerTest {
+    private static final int MAX_HELD_PACKETS = 16;
+
+    private Node node;
+    private NodeConnector port1;
+    private NodeConnector port2;
+    private NodeConnector port3;
+    private List<Object> events;
+    private RecordingProgrammer programmer;
+    private RecordingListener listener;
+    private FlowInstaller installer;
+
+    @Before
+    public void setUp() {
+        node = NodeCreator.createOFNode(1L);
+        port1 = NodeConnectorCreator.createOFNodeConnector((short) 1, node);
+        port2 = NodeConnectorCreator.createOFNodeConnector((short) 2, node);
+        port3 = NodeConnectorCreator.createOFNodeConnector((short) 3, node);
+        events = Collections.synchronizedList(new ArrayList<Object>());
+        programmer = new RecordingProgrammer(events);
+        listener = new RecordingListener();
+        installer = new FlowInstaller(programmer, 1, 16, 32, listener);
+        installer.setDataPacketService(new RecordingDataPacketService(events));
+    }
+
+    @After
+    public void tearDown() {
+        programmer.gate.countDown();
+        installer.shutdown();
+    }
+
+    private Flow flow(NodeConnector in, NodeConnector out) {
+        Match match = new Match();
+        match.setField(new MatchField(MatchType.IN_PORT, in));
+        return new Flow(match, Collections.<Action>singletonList(new Output(out)));
+    }
+
+    private static RawPacket packet() throws ConstructionException {
+        return new RawPacket(new byte[0]);
+    }
+
+    /**
+     * Submits a flow and waits until the worker is stuck programming it, so
+     * everything submitted next stays queued behind it.
+     */
+    private Flow blockWorker() throws InterruptedException {
+        Flow blocker = flow(port3, port1);
+        assertTrue(installer.submit(node, blocker));
+        assertTrue(programmer.entered.await(5, TimeUnit.SECONDS));
+        return blocker;
+    }
+
+    /**
+     * Waits for the expected flow-mods and packets, in that order; held
+     * packets go out after the listener has heard about their flows.
+     */
+    private void assertEvents(Object... expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (events.size() < expected.length && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(Arrays.asList(expected), new ArrayList<Object>(events));
+    }
+
+    @Test
+    public void removalReplacesPendingAdd() throws InterruptedException {
+        blockWorker();
+        Flow add = flow(port1, port2);
+        Flow remove = flow(port1, port2);
+        assertTrue(installer.submit(node, add));
+        assertTrue(installer.submitRemoval(node, remove));
+        assertEquals(1, installer.getPendingCount());
+        assertEquals(1, installer.getCoalescedCount());
+
+        programmer.gate.countDown();
+        listener.await(2);
+        assertEquals(1, installer.getInstalledCount());
+        assertEquals(1, installer.getRemovedCount());
+        assertEvents("add", "remove");
+        assertSame(remove, listener.removed.get(0));
+    }
+
+    @Test
+    public void laterAddReplacesPendingAdd() throws InterruptedException {
+        blockWorker();
+        Flow first = flow(port1, port2);
+        Flow second = flow(port1, port2);
+        installer.submit(node, first);
+        installer.submit(node, second);
+        assertEquals(1, installer.getPendingCount());
+
+        programmer.gate.countDown();
+        listener.await(2);
+        assertEquals(2, installer.getInstalledCount());
+        assertSame(second, listener.installed.get(1));
+    }
+
+    @Test
+    public void differentMatchesAreNotCoalesced() throws InterruptedException {
+        blockWorker();
+        installer.submit(node, flow(port1, port2));
+        installer.submitRemoval(node, flow(port2, port1));
+        assertEquals(2, installer.getPendingCount());
+        assertEquals(0, installer.getCoalescedCount());
+
+        programmer.gate.countDown();
+        listener.await(3);
+        assertEquals(2, installer.getInstalledCount());
+        assertEquals(1, installer.getRemovedCount());
+    }
+
+    @Test
+    public void failuresReportWhetherTheyWereRemovals() throws InterruptedException {
+        programmer.gate.countDown();
+        programmer.fail = true;
+        installer.submitRemoval(node, flow(port1, port2));
+
+        listener.await(1);
+        assertEquals(1, installer.getFailedCount());
+        assertEquals(Boolean.TRUE, listener.failedRemovals.get(0));
+    }
+
+    @Test
+    public void packetIsSentOnlyAfterItsFlow() throws Exception {
+        RawPacket packet = packet();
+        assertTrue(installer.submit(node, flow(port1, port2), packet));
+        assertTrue(programmer.entered.await(5, TimeUnit.SECONDS));
+        Thread.sleep(50);
+        assertTrue(events.isEmpty());
+
+        programmer.gate.countDown();
+        assertEvents("add", packet);
+    }
+
+    @Test
+    public void releaseHoldsBehindPendingAdd() throws Exception {
+        blockWorker();
+        Flow flow = flow(port1, port2);
+        RawPacket first = packet();
+        RawPacket second = packet();
+        installer.submit(node, flow, first);
+        assertTrue(installer.release(node, flow, second));
+
+        programmer.gate.countDown();
+        assertEvents("add", "add", first, second);
+    }
+
+    @Test
+    public void releaseHoldsBehindInFlightAdd() throws Exception {
+        Flow blocker = blockWorker();
+        RawPacket packet = packet();
+        assertTrue(installer.release(node, blocker, packet));
+        assertTrue(events.isEmpty());
+
+        programmer.gate.countDown();
+        assertEvents("add", packet);
+    }
+
+    @Test
+    public void releaseRefusesWhenNothingIsPending() throws Exception {
+        assertFalse(installer.release(node, flow(port1, port2), packet()));
+        blockWorker();
+        assertFalse(installer.release(node, flow(port1, port2), packet()));
+        Flow removal = flow(port1, port2);
+        installer.submitRemoval(node, removal);
+        assertFalse(installer.release(node, removal, packet()));
+    }
+
+    @Test
+    public void heldPacketsAreCapped() throws Exception {
+        blockWorker();
+        Flow flow = flow(port1, port2);
+        installer.submit(node, flow, packet());
+        for (int i = 1; i < MAX_HELD_PACKETS; i++) {
+            assertTrue(installer.release(node, flow, packet()));
+        }
+        assertFalse(installer.release(node, flow, packet()));
+    }
+
+    @Test
+    public void removalSendsHeldPacketsRightAway() throws Exception {
+        blockWorker();
+        RawPacket packet = packet();
+        installer.submit(node, flow(port1, port2), packet);
+        installer.submitRemoval(node, flow(port1, port2));
+        assertEquals(Collections.<Object>singletonList(packet), events);
+
+        programmer.gate.countDown();
+        assertEvents(packet, "add", "remove");
+        assertEquals(0, installer.getReleasedCount());
+    }
+
+    @Test
+    public void addTowardsAnotherPortSendsHeldPacketsRightAway() throws Exception {
+        blockWorker();
+        RawPacket stale = packet();
+        RawPacket fresh = packet();
+        installer.submit(node, flow(port1, port2), stale);
+        installer.submit(node, flow(port1, port3), fresh);
+        assertEquals(Collections.<Object>singletonList(stale), events);
+
+        programmer.gate.countDown();
+        assertEvents(stale, "add", "add", fresh);
+    }
+
+    @Test
+    public void addTowardsSamePortKeepsHeldPackets() throws Exception {
+        blockWorker();
+        RawPacket first = packet();
+        RawPacket second = packet();
+        installer.submit(node, flow(port1, port2), first);
+        installer.submit(node, flow(port1, port2), second);
+        assertTrue(events.isEmpty());
+
+        programmer.gate.countDown();
+        assertEvents("add", "add", first, second);
+    }
+
+    private static final class RecordingProgrammer implements IFlowProgrammerService {
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch gate = new CountDownLatch(1);
+        final List<Object> events;
+        volatile boolean fail;
+
+        RecordingProgrammer(List<Object> events) {
+            this.events = events;
+        }
+
+        private Status record(String call) {
+            entered.countDown();
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            events.add(call);
+            return fail ? new Status(StatusCode.INTERNALERROR, "failed") : new Status(StatusCode.SUCCESS);
+        }
+
+        @Override
+        public Status addFlow(Node node, Flow flow) {
+            return record("add");
+        }
+
+        @Override
+        public Status modifyFlow(Node node, Flow oldFlow, Flow newFlow) {
+            return record("modify");
+        }
+
+        @Override
+        public Status removeFlow(Node node, Flow flow) {
+            return record("remove");
+        }
+
+        @Override
+        public Status addFlowAsync(Node node, Flow flow) {
+            return addFlow(node, flow);
+        }
+
+        @Override
+        public Status modifyFlowAsync(Node node, Flow oldFlow, Flow newFlow) {
+            return modifyFlow(node, oldFlow, newFlow);
+        }
+
+        @Override
+        public Status removeFlowAsync(Node node, Flow flow) {
+            return removeFlow(node, flow);
+        }
+
+        @Override
+        public Status removeAllFlows(Node node) {
+            return new Status(StatusCode.SUCCESS);
+        }
+
+        @Override
+        public Status syncSendBarrierMessage(Node node) {
+            return new Status(StatusCode.SUCCESS);
+        }
+
+        @Override
+        public Status asyncSendBarrierMessage(Node node) {
+            return new Status(StatusCode.SUCCESS);
+        }
+    }
+
+    private static final class RecordingDataPacketService implements IDataPacketService {
+        final List<Object> events;
+
+        RecordingDataPacketService(List<Object> events) {
+            this.events = events;
+        }
+
+        @Override
+        public void transmitDataPacket(RawPacket packet) {
+            events.add(packet);
+        }
+
+        @Override
+        public Packet decodeDataPacket(RawPacket packet) {
+            return null;
+        }
+
+        @Override
+        public RawPacket encodeDataPacket(Packet packet) {
+            return null;
+        }
+    }
+
+    private static final class RecordingListener implements FlowInstaller.Listener {
+        final List<Flow> installed = Collections.synchronizedList(new ArrayList<Flow>());
+        final List<Flow> removed = Collections.synchronizedList(new ArrayList<Flow>());
+        final List<Boolean> failedRemovals = Collections.synchronizedList(new ArrayList<Boolean>());
+        private int outcomes;
+
+        @Override
+        public void flowInstalled(Node node, Flow flow) {
+            installed.add(flow);
+            outcome();
+        }
+
+        @Override
+        public void flowRemoved(Node node, Flow flow) {
+            removed.add(flow);
+            outcome();
+        }
+
+        @Override
+        public void flowFailed(Node node, Flow flow, boolean removal, Status status) {
+            failedRemovals.add(removal);
+            outcome();
+        }
+
+        private synchronized void outcome() {
+            outcomes++;
+            notifyAll();
+        }
+
+        synchronized void await(int count) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (outcomes < count) {
+                long left = deadline - System.currentTimeMillis();
+                if (left <= 0) {
+                    throw new AssertionError("Timed out waiting for " + count + " outcomes");
+                }
+                wait(left);
+            }
+        }
+    }
+}
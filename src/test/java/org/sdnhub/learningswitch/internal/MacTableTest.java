@@ -0,0 +1,183 @@
+package org.sdnhub.learningswitch.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opendaylight.controller.sal.core.Node;
+import org.opendaylight.controller.sal.core.NodeConnector;
+import org.opendaylight.controller.sal.utils.NodeConnectorCreator;
+import org.opendaylight.controller.sal.utils.NodeCreator;
+
+public class MacTableTest {
+    private static final long HOST_A = 0x000000000001L;
+    private static final long HOST_B = 0x000000000002L;
+    private static final long HOST_C = 0x000000000003L;
+
+    private Node node;
+    private Node other;
+    private NodeConnector port1;
+    private NodeConnector port2;
+    private NodeConnector otherPort;
+    private ManualClock clock;
+
+    @Before
+    public void setUp() {
+        node = NodeCreator.createOFNode(1L);
+        other = NodeCreator.createOFNode(2L);
+        port1 = NodeConnectorCreator.createOFNodeConnector((short) 1, node);
+        port2 = NodeConnectorCreator.createOFNodeConnector((short) 2, node);
+        otherPort = NodeConnectorCreator.createOFNodeConnector((short) 1, other);
+        clock = new ManualClock();
+    }
+
+    @Test
+    public void learnsPerSwitch() {
+        MacTable table = new MacTable();
+        assertNull(table.put(port1, HOST_A));
+        assertNull(table.put(otherPort, HOST_A));
+
+        assertEquals(port1, table.get(node, HOST_A));
+        assertEquals(otherPort, table.get(other, HOST_A));
+        assertNull(table.get(node, HOST_B));
+        assertEquals(1, table.size(node));
+        assertEquals(2, table.size());
+    }
+
+    @Test
+    public void putReturnsPreviousPortOnMove() {
+        MacTable table = new MacTable();
+        table.put(port1, HOST_A);
+
+        assertEquals(port1, table.put(port1, HOST_A));
+        assertEquals(port1, table.put(port2, HOST_A));
+        assertEquals(port2, table.get(node, HOST_A));
+        assertEquals(1, table.size(node));
+    }
+
+    @Test
+    public void removeAndRemoveNode() {
+        MacTable table = new MacTable();
+        table.put(port1, HOST_A);
+        table.put(port2, HOST_B);
+        table.put(otherPort, HOST_C);
+
+        assertEquals(port1, table.remove(node, HOST_A));
+        assertNull(table.get(node, HOST_A));
+        assertEquals(port2, table.get(node, HOST_B));
+
+        table.removeNode(node);
+        assertNull(table.get(node, HOST_B));
+        assertEquals(otherPort, table.get(other, HOST_C));
+    }
+
+    @Test
+    public void growsPastInitialCapacity() {
+        MacTable table = new MacTable(4, 0, 0);
+        for (long mac = 1; mac <= 1000; mac++) {
+            table.put(port1, mac);
+        }
+        assertEquals(1000, table.size(node));
+        for (long mac = 1; mac <= 1000; mac++) {
+            assertEquals(port1, table.get(node, mac));
+        }
+    }
+
+    @Test
+    public void idleEntriesAgeOut() {
+        MacTable table = new MacTable(16, 0, 200, clock);
+        table.put(port1, HOST_A);
+        clock.advance(300);
+
+        // Already invisible before the wheel gets to it
+        assertNull(table.get(node, HOST_A));
+        table.expire();
+        assertEquals(0, table.size(node));
+        assertEquals(1, table.getAgedCount());
+    }
+
+    @Test
+    public void idleEntryComingBackIsNotAMove() {
+        MacTable table = new MacTable(16, 0, 200, clock);
+        table.put(port1, HOST_A);
+        clock.advance(300);
+
+        assertNull(table.put(port2, HOST_A));
+        assertEquals(port2, table.get(node, HOST_A));
+        assertEquals(1, table.size(node));
+    }
+
+    @Test
+    public void refreshedEntryIsRescheduledNotAged() {
+        MacTable table = new MacTable(16, 0, 400, clock);
+        table.put(port1, HOST_A);
+        clock.advance(250);
+        table.put(port1, HOST_A);
+        clock.advance(250);
+
+        // HOST_A's original deadline has passed, its refreshed one has not
+        table.put(port2, HOST_B);
+        assertEquals(port1, table.get(node, HOST_A));
+        assertEquals(0, table.getAgedCount());
+    }
+
+    @Test
+    public void evictsEntryClosestToItsDeadline() {
+        MacTable table = new MacTable(16, 2, 3200, clock);
+        table.put(port1, HOST_A);
+        clock.advance(250);
+        table.put(port2, HOST_B);
+        table.put(port1, HOST_A);
+
+        // HOST_A sits in the earlier wheel bucket but was seen last
+        table.put(port2, HOST_C);
+        assertEquals(port1, table.get(node, HOST_A));
+        assertNull(table.get(node, HOST_B));
+        assertEquals(port2, table.get(node, HOST_C));
+        assertEquals(2, table.size(node));
+        assertEquals(1, table.getEvictedCount());
+    }
+
+    @Test
+    public void evictsOldestWhenNotAging() {
+        MacTable table = new MacTable(16, 2, 0, clock);
+        table.restore(port1, HOST_A, clock.millis() - 1000);
+        table.put(port2, HOST_B);
+
+        table.put(port2, HOST_C);
+        assertNull(table.get(node, HOST_A));
+        assertEquals(port2, table.get(node, HOST_B));
+        assertEquals(1, table.getEvictedCount());
+    }
+
+    @Test
+    public void restoreSkipsIdleEntriesAndKeepsNewerOnes() {
+        MacTable table = new MacTable(16, 0, 1000, clock);
+        long now = clock.millis();
+        table.put(port2, HOST_B);
+
+        assertFalse(table.restore(port1, HOST_A, now - 2000));
+        assertFalse(table.restore(port1, HOST_B, now - 100));
+        assertTrue(table.restore(port1, HOST_C, now - 100));
+
+        assertNull(table.get(node, HOST_A));
+        assertEquals(port2, table.get(node, HOST_B));
+        assertEquals(port1, table.get(node, HOST_C));
+    }
+
+    private static final class ManualClock implements MacTable.Clock {
+        private long now = 1000000L;
+
+        @Override
+        public long millis() {
+            return now;
+        }
+
+        void advance(long millis) {
+            now += millis;
+        }
+    }
+}
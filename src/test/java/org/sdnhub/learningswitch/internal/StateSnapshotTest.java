@@ -0,0 +1,188 @@
+package org.sdnhub.learningswitch.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opendaylight.controller.sal.core.Node;
+import org.opendaylight.controller.sal.core.NodeConnector;
+import org.opendaylight.controller.sal.utils.NodeConnectorCreator;
+import org.opendaylight.controller.sal.utils.NodeCreator;
+import org.sdnhub.learningswitch.LearningSwitchData;
+
+public class StateSnapshotTest {
+    private File file;
+    private Node node;
+    private NodeConnector port1;
+    private NodeConnector port2;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("learningswitch", ".snapshot");
+        assertTrue(file.delete());
+        node = NodeCreator.createOFNode(1L);
+        port1 = NodeConnectorCreator.createOFNodeConnector((short) 1, node);
+        port2 = NodeConnectorCreator.createOFNodeConnector((short) 2, node);
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+        new File(file.getPath() + ".tmp").delete();
+    }
+
+    @Test
+    public void missingFileLoadsNothing() throws IOException {
+        assertEquals(-1, StateSnapshot.load(file, new MacTable(),
+                new ConcurrentSkipListMap<UUID, LearningSwitchData>()));
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        MacTable table = new MacTable();
+        table.put(port1, 0x0000000000aaL);
+        table.put(port2, 0x0000000000bbL);
+        Map<UUID, LearningSwitchData> data = new ConcurrentSkipListMap<UUID, LearningSwitchData>();
+        UUID key = UUID.randomUUID();
+        data.put(key, new LearningSwitchData(key.toString(), "foo", null));
+
+        StateSnapshot snapshot = new StateSnapshot(file, 16);
+        snapshot.open();
+        snapshot.write(table, data, 1L);
+        snapshot.close();
+
+        MacTable restored = new MacTable();
+        Map<UUID, LearningSwitchData> restoredData =
+                new ConcurrentSkipListMap<UUID, LearningSwitchData>();
+        assertEquals(2, StateSnapshot.load(file, restored, restoredData));
+        assertEquals(port1, restored.get(node, 0x0000000000aaL));
+        assertEquals(port2, restored.get(node, 0x0000000000bbL));
+        assertEquals(1, restoredData.size());
+        assertEquals("foo", restoredData.get(key).getFoo());
+        assertNull(restoredData.get(key).getBar());
+    }
+
+    @Test
+    public void laterSnapshotsDropForgottenEntries() throws IOException {
+        MacTable table = new MacTable();
+        table.put(port1, 0x0000000000aaL);
+        table.put(port2, 0x0000000000bbL);
+        Map<UUID, LearningSwitchData> data = new ConcurrentSkipListMap<UUID, LearningSwitchData>();
+
+        StateSnapshot snapshot = new StateSnapshot(file, 16);
+        snapshot.open();
+        snapshot.write(table, data, 0L);
+        table.remove(node, 0x0000000000aaL);
+        table.put(port1, 0x0000000000bbL);
+        snapshot.write(table, data, 0L);
+        snapshot.close();
+
+        MacTable restored = new MacTable();
+        assertEquals(1, StateSnapshot.load(file, restored, data));
+        assertNull(restored.get(node, 0x0000000000aaL));
+        assertEquals(port1, restored.get(node, 0x0000000000bbL));
+    }
+
+    @Test
+    public void openingKeepsPreviousSnapshotUntilFirstWrite() throws IOException {
+        MacTable table = new MacTable();
+        table.put(port1, 0x0000000000aaL);
+        Map<UUID, LearningSwitchData> data = new ConcurrentSkipListMap<UUID, LearningSwitchData>();
+        StateSnapshot previous = new StateSnapshot(file, 16);
+        previous.open();
+        previous.write(table, data, 0L);
+        previous.close();
+
+        StateSnapshot next = new StateSnapshot(file, 16);
+        next.open();
+        MacTable restored = new MacTable();
+        assertEquals(1, StateSnapshot.load(file, restored, data));
+        assertEquals(port1, restored.get(node, 0x0000000000aaL));
+
+        next.write(new MacTable(), data, 0L);
+        next.close();
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+        assertEquals(0, StateSnapshot.load(file, new MacTable(), data));
+    }
+
+    @Test
+    public void loadCountsOnlyRestoredEntries() throws IOException {
+        MacTable table = new MacTable();
+        table.put(port1, 0x0000000000aaL);
+        table.put(port1, 0x0000000000bbL);
+        Map<UUID, LearningSwitchData> data = new ConcurrentSkipListMap<UUID, LearningSwitchData>();
+        StateSnapshot snapshot = new StateSnapshot(file, 16);
+        snapshot.open();
+        snapshot.write(table, data, 0L);
+        snapshot.close();
+
+        // Learned again since, the live entry wins
+        MacTable restored = new MacTable();
+        restored.put(port2, 0x0000000000bbL);
+        assertEquals(1, StateSnapshot.load(file, restored, data));
+        assertEquals(port2, restored.get(node, 0x0000000000bbL));
+    }
+
+    @Test
+    public void countsEntriesThatDoNotFit() throws IOException {
+        MacTable table = new MacTable();
+        for (long mac = 1; mac <= 5; mac++) {
+            table.put(port1, mac);
+        }
+        Map<UUID, LearningSwitchData> data = new ConcurrentSkipListMap<UUID, LearningSwitchData>();
+        StateSnapshot snapshot = new StateSnapshot(file, 3);
+        snapshot.open();
+        snapshot.write(table, data, 0L);
+        assertEquals(2, snapshot.getUnsavedEntries());
+
+        table.remove(node, 1L);
+        table.remove(node, 2L);
+        snapshot.write(table, data, 0L);
+        assertEquals(0, snapshot.getUnsavedEntries());
+        snapshot.close();
+        assertEquals(3, StateSnapshot.load(file, new MacTable(), data));
+    }
+
+    @Test
+    public void reusesPortSlotsNoLongerReferenced() throws IOException {
+        MacTable table = new MacTable();
+        Map<UUID, LearningSwitchData> data = new ConcurrentSkipListMap<UUID, LearningSwitchData>();
+        StateSnapshot snapshot = new StateSnapshot(file, 16);
+        snapshot.open();
+        // More distinct ports over time than the port table holds
+        NodeConnector port = null;
+        for (int i = 1; i <= 5000; i++) {
+            port = NodeConnectorCreator.createOFNodeConnector((short) i, node);
+            table.put(port, 0x0000000000aaL);
+            snapshot.write(table, data, 0L);
+        }
+        assertEquals(0, snapshot.getUnsavedEntries());
+        snapshot.close();
+
+        MacTable restored = new MacTable();
+        assertEquals(1, StateSnapshot.load(file, restored, data));
+        assertEquals(port, restored.get(node, 0x0000000000aaL));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsForeignFile() throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(new byte[128]);
+        } finally {
+            out.close();
+        }
+        StateSnapshot.load(file, new MacTable(), new ConcurrentSkipListMap<UUID, LearningSwitchData>());
+    }
+}